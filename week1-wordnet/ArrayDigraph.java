@@ -1,46 +1,208 @@
 import edu.princeton.cs.algs4.Digraph;
 
-import java.util.Iterator;
+import java.util.Arrays;
 
-public class ArrayDigraph {
-    private final int[][] graph;
-    private final int vertexCount;
-    private final int edgesCount;
+// Digraph in compressed sparse row form: targets of v are targets[starts[v]] .. targets[ends[v] - 1],
+// in insertion order. Built graphs keep all ranges back to back. addEdge moves the range of a vertex
+// that is full to the end of targets with room for as many edges again, so an added edge costs
+// amortized O(1) and every vertex still has one contiguous range. Adding edges or vertexes must
+// not overlap with reading the graph.
+public class ArrayDigraph implements IndexedDigraph {
+    private int[] starts;
+    private int[] ends;
+    // end of the space reserved for the edges of v; null until the first addEdge
+    private int[] limits;
+    private int[] targets;
+
+    private int vertexCount;
+    private int edgesCount;
+    // targets after this index are not used by any vertex
+    private int targetsEnd;
 
     public ArrayDigraph(Digraph d) {
         vertexCount = d.V();
-        graph = new int[vertexCount][];
+        starts = new int[vertexCount];
+        ends = new int[vertexCount];
+        targets = new int[d.E()];
 
-        int eCounter = 0;
+        int end = 0;
         for (int v = 0; v < vertexCount; ++v) {
-            int adjCounter = 0;
+            starts[v] = end;
+            end += d.outdegree(v);
+            ends[v] = end;
 
-            Iterator<Integer> it = d.adj(v).iterator();
-            while (it.hasNext()) {
-                ++adjCounter;
-                ++eCounter;
-                it.next();
+            // Bag iterates in reverse insertion order
+            int i = end;
+            for (int w : d.adj(v)) {
+                targets[--i] = w;
             }
+        }
+        edgesCount = end;
+        targetsEnd = end;
+    }
+
+    ArrayDigraph(int[] offsets, int[] targets) {
+        vertexCount = offsets.length - 1;
+        starts = Arrays.copyOf(offsets, vertexCount);
+        ends = Arrays.copyOfRange(offsets, 1, vertexCount + 1);
+        this.targets = targets;
+        edgesCount = offsets[vertexCount];
+        targetsEnd = edgesCount;
+    }
+
+    // index of the first edge leaving v
+    @Override
+    public int firstEdge(int v) {
+        return starts[v];
+    }
 
-            graph[v] = new int[adjCounter];
-            it = d.adj(v).iterator();
-            while (it.hasNext()) {
-                graph[v][adjCounter-- - 1] = it.next();
+    // index after the last edge leaving v
+    @Override
+    public int lastEdge(int v) {
+        return ends[v];
+    }
+
+    // head of the edge with the given index
+    @Override
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    @Override
+    public int outdegree(int v) {
+        return ends[v] - starts[v];
+    }
+
+    // graph with all edges reversed, e.g. hypernyms -> hyponyms
+    public ArrayDigraph reverse() {
+        final int[] reversedOffsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; ++v) {
+            for (int e = starts[v]; e < ends[v]; ++e) {
+                ++reversedOffsets[targets[e] + 1];
             }
         }
 
-        edgesCount = eCounter;
-    }
+        for (int v = 0; v < vertexCount; ++v) {
+            reversedOffsets[v + 1] += reversedOffsets[v];
+        }
+
+        final int[] next = Arrays.copyOf(reversedOffsets, vertexCount);
+        final int[] reversedTargets = new int[edgesCount];
+        for (int v = 0; v < vertexCount; ++v) {
+            for (int e = starts[v]; e < ends[v]; ++e) {
+                reversedTargets[next[targets[e]]++] = v;
+            }
+        }
 
-    public int[] adj(int v) {
-        return graph[v];
+        return new ArrayDigraph(reversedOffsets, reversedTargets);
     }
 
+    @Override
     public int V() {
         return vertexCount;
     }
 
+    @Override
     public int E() {
         return edgesCount;
     }
+
+    // adds a vertex without edges and returns it
+    int addVertex() {
+        if (vertexCount == starts.length) {
+            final int capacity = Math.max(vertexCount * 2, 16);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            if (limits != null) {
+                limits = Arrays.copyOf(limits, capacity);
+            }
+        }
+
+        starts[vertexCount] = targetsEnd;
+        ends[vertexCount] = targetsEnd;
+        if (limits != null) {
+            limits[vertexCount] = targetsEnd;
+        }
+        return vertexCount++;
+    }
+
+    void addEdge(int v, int w) {
+        Builder.checkVertex(v, vertexCount);
+        Builder.checkVertex(w, vertexCount);
+
+        if (limits == null) {
+            limits = Arrays.copyOf(ends, starts.length);
+        }
+
+        if (ends[v] == limits[v]) {
+            final int degree = ends[v] - starts[v];
+            final int capacity = Math.max(degree * 2, 2);
+            if (limits[v] == targetsEnd) {
+                // the last range grows in place
+                ensureTargets(starts[v] + capacity);
+            }
+            else {
+                ensureTargets(targetsEnd + capacity);
+                System.arraycopy(targets, starts[v], targets, targetsEnd, degree);
+                starts[v] = targetsEnd;
+                ends[v] = targetsEnd + degree;
+            }
+            limits[v] = starts[v] + capacity;
+            targetsEnd = limits[v];
+        }
+
+        targets[ends[v]++] = w;
+        ++edgesCount;
+    }
+
+    private void ensureTargets(int size) {
+        if (size > targets.length) {
+            targets = Arrays.copyOf(targets, Math.max(size, targets.length * 2));
+        }
+    }
+
+    // Collects edges in arbitrary order and lays them out in CSR form with one counting sort
+    static class Builder {
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private int edgesCount = 0;
+
+        void addEdge(int v, int w) {
+            if (edgesCount == from.length) {
+                from = Arrays.copyOf(from, edgesCount * 2);
+                to = Arrays.copyOf(to, edgesCount * 2);
+            }
+            from[edgesCount] = v;
+            to[edgesCount] = w;
+            ++edgesCount;
+        }
+
+        ArrayDigraph build(int vertexCount) {
+            final int[] offsets = new int[vertexCount + 1];
+            for (int i = 0; i < edgesCount; ++i) {
+                checkVertex(from[i], vertexCount);
+                checkVertex(to[i], vertexCount);
+                ++offsets[from[i] + 1];
+            }
+
+            for (int v = 0; v < vertexCount; ++v) {
+                offsets[v + 1] += offsets[v];
+            }
+
+            final int[] next = Arrays.copyOf(offsets, vertexCount);
+            final int[] targets = new int[edgesCount];
+            for (int i = 0; i < edgesCount; ++i) {
+                targets[next[from[i]]++] = to[i];
+            }
+
+            return new ArrayDigraph(offsets, targets);
+        }
+
+        private static void checkVertex(int v, int vertexCount) {
+            if (v < 0 || v >= vertexCount) {
+                throw new IllegalArgumentException(
+                        "vertex " + v + " is not between 0 and " + (vertexCount - 1));
+            }
+        }
+    }
 }
@@ -0,0 +1,58 @@
+// Single iterative pass checking that a hypernym graph is a rooted DAG: Kahn's topological sort
+// over a primitive in-degree array detects cycles and counts roots (vertexes without hypernyms)
+// at the same time. No recursion and two int arrays of V entries, so it works for any depth and
+// for graphs with tens of millions of vertexes.
+class DagValidator {
+    private DagValidator() {
+    }
+
+    // Vertexes in topological order, every vertex before its hypernyms: synsets without hyponyms
+    // first and the root last. Throws IllegalArgumentException if the graph has a cycle or not
+    // exactly one root.
+    static int[] validate(ArrayDigraph graph) {
+        final int vertexCount = graph.V();
+
+        // number of hyponyms of every vertex not yet placed in the order
+        final int[] inDegrees = new int[vertexCount];
+        for (int v = 0; v < vertexCount; ++v) {
+            for (int e = graph.firstEdge(v), end = graph.lastEdge(v); e < end; ++e) {
+                ++inDegrees[graph.target(e)];
+            }
+        }
+
+        // the order doubles as the queue: order[head .. tail - 1] are placed but not processed
+        final int[] order = new int[vertexCount];
+        int tail = 0;
+        for (int v = 0; v < vertexCount; ++v) {
+            if (inDegrees[v] == 0) {
+                order[tail++] = v;
+            }
+        }
+
+        int rootsCount = 0;
+        for (int head = 0; head < tail; ++head) {
+            final int v = order[head];
+            if (graph.outdegree(v) == 0) {
+                ++rootsCount;
+            }
+
+            for (int e = graph.firstEdge(v), end = graph.lastEdge(v); e < end; ++e) {
+                final int w = graph.target(e);
+                if (--inDegrees[w] == 0) {
+                    order[tail++] = w;
+                }
+            }
+        }
+
+        // vertexes on or above a cycle never reach in-degree 0
+        if (tail < vertexCount) {
+            throw new IllegalArgumentException("Graph is not DAG because it has cycle");
+        }
+
+        if (rootsCount != 1) {
+            throw new IllegalArgumentException("Provided graph doesn't have exactly one root");
+        }
+
+        return order;
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.Arrays;
+
+// Pruned landmark labeling over ancestors. Every vertex u keeps a label: a list of
+// (hub, distance from u up to hub) entries, where every hub is an ancestor of u (or u itself).
+// Labels are built so that for any v and w the shortest ancestral path goes through a hub
+// present in both labels, so a query is a merge of two short lists instead of two BFS.
+//
+// Hubs are processed by rank, most hyponyms first. A downward BFS from a hub stops at every
+// vertex whose current labels already give a path at least as short through an earlier hub:
+// any ancestral path through the new hub can then be replaced by one through the earlier hub.
+class DistanceIndex {
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    // Labels of v are hubs[labelOffsets[v]] .. hubs[labelOffsets[v + 1] - 1], sorted by hub rank
+    private final int[] labelOffsets;
+    private final int[] hubs;
+    private final int[] distances;
+    // hub rank -> vertex
+    private final int[] hubVertexes;
+
+    private DistanceIndex(int[] labelOffsets, int[] hubs, int[] distances, int[] hubVertexes) {
+        this.labelOffsets = labelOffsets;
+        this.hubs = hubs;
+        this.distances = distances;
+        this.hubVertexes = hubVertexes;
+    }
+
+    // Per query workspace for set queries
+    static final class Scratch {
+        private final int[] hubDistances;
+        private final int[] touched;
+
+        Scratch(int hubsCount) {
+            hubDistances = new int[hubsCount];
+            touched = new int[hubsCount];
+            Arrays.fill(hubDistances, INFINITY);
+        }
+
+        int hubsCount() {
+            return hubDistances.length;
+        }
+    }
+
+    // null when labels need more than maxLabelEntries entries
+    static DistanceIndex build(ArrayDigraph graph, long maxLabelEntries) {
+        final int vertexCount = graph.V();
+        final ArrayDigraph hyponyms = graph.reverse();
+        final int[] hubVertexes = rankHubs(hyponyms);
+
+        final int[][] labels = new int[vertexCount][];
+        final int[] labelSizes = new int[vertexCount];
+        long entriesCount = 0;
+
+        final int[] hubDistances = new int[vertexCount];
+        Arrays.fill(hubDistances, INFINITY);
+        final int[] visited = new int[vertexCount];
+        final int[] queue = new int[vertexCount];
+        final int[] queueDistances = new int[vertexCount];
+
+        for (int rank = 0; rank < vertexCount; ++rank) {
+            final int hub = hubVertexes[rank];
+            final int[] hubLabel = labels[hub];
+            final int hubLabelSize = labelSizes[hub];
+            for (int i = 0; i < hubLabelSize; i += 2) {
+                hubDistances[hubLabel[i]] = hubLabel[i + 1];
+            }
+
+            // visited[u] == rank + 1 marks vertexes seen from the current hub
+            int head = 0;
+            int tail = 0;
+            queue[tail] = hub;
+            queueDistances[tail++] = 0;
+            visited[hub] = rank + 1;
+
+            while (head < tail) {
+                final int u = queue[head];
+                final int d = queueDistances[head++];
+
+                if (isCovered(labels[u], labelSizes[u], hubDistances, d)) {
+                    continue;
+                }
+
+                if (++entriesCount > maxLabelEntries) {
+                    return null;
+                }
+                labels[u] = append(labels[u], labelSizes[u], rank, d);
+                labelSizes[u] += 2;
+
+                for (int e = hyponyms.firstEdge(u); e < hyponyms.lastEdge(u); ++e) {
+                    final int x = hyponyms.target(e);
+                    if (visited[x] != rank + 1) {
+                        visited[x] = rank + 1;
+                        queue[tail] = x;
+                        queueDistances[tail++] = d + 1;
+                    }
+                }
+            }
+
+            for (int i = 0; i < hubLabelSize; i += 2) {
+                hubDistances[hubLabel[i]] = INFINITY;
+            }
+        }
+
+        final int[] labelOffsets = new int[vertexCount + 1];
+        final int[] hubs = new int[(int) entriesCount];
+        final int[] distances = new int[(int) entriesCount];
+        int offset = 0;
+        for (int v = 0; v < vertexCount; ++v) {
+            labelOffsets[v] = offset;
+            for (int i = 0; i < labelSizes[v]; i += 2) {
+                hubs[offset] = labels[v][i];
+                distances[offset++] = labels[v][i + 1];
+            }
+            labels[v] = null;
+        }
+        labelOffsets[vertexCount] = offset;
+
+        return new DistanceIndex(labelOffsets, hubs, distances, hubVertexes);
+    }
+
+    // total number of label entries
+    int size() {
+        return hubs.length;
+    }
+
+    int hubsCount() {
+        return hubVertexes.length;
+    }
+
+    long query(int v, int w) {
+        int shortestPath = INFINITY;
+        int ancestor = -1;
+
+        int i = labelOffsets[v];
+        int j = labelOffsets[w];
+        final int vEnd = labelOffsets[v + 1];
+        final int wEnd = labelOffsets[w + 1];
+        while (i < vEnd && j < wEnd) {
+            if (hubs[i] < hubs[j]) {
+                ++i;
+            }
+            else if (hubs[i] > hubs[j]) {
+                ++j;
+            }
+            else {
+                final int candidate = distances[i] + distances[j];
+                if (candidate < shortestPath) {
+                    shortestPath = candidate;
+                    ancestor = hubVertexes[hubs[i]];
+                }
+                ++i;
+                ++j;
+            }
+        }
+
+        return ancestor == -1 ? SAPSearch.result(-1, -1) : SAPSearch.result(shortestPath, ancestor);
+    }
+
+    long query(int[] v, int vCount, int[] w, int wCount, Scratch scratch) {
+        final int[] hubDistances = scratch.hubDistances;
+        final int[] touched = scratch.touched;
+        int touchedCount = 0;
+
+        for (int k = 0; k < vCount; ++k) {
+            final int s = v[k];
+            for (int i = labelOffsets[s]; i < labelOffsets[s + 1]; ++i) {
+                final int hub = hubs[i];
+                if (hubDistances[hub] == INFINITY) {
+                    touched[touchedCount++] = hub;
+                    hubDistances[hub] = distances[i];
+                }
+                else if (distances[i] < hubDistances[hub]) {
+                    hubDistances[hub] = distances[i];
+                }
+            }
+        }
+
+        int shortestPath = INFINITY;
+        int ancestor = -1;
+        for (int k = 0; k < wCount; ++k) {
+            final int s = w[k];
+            for (int i = labelOffsets[s]; i < labelOffsets[s + 1]; ++i) {
+                final int hubDistance = hubDistances[hubs[i]];
+                if (hubDistance != INFINITY && hubDistance + distances[i] < shortestPath) {
+                    shortestPath = hubDistance + distances[i];
+                    ancestor = hubVertexes[hubs[i]];
+                }
+            }
+        }
+
+        for (int i = 0; i < touchedCount; ++i) {
+            hubDistances[touched[i]] = INFINITY;
+        }
+
+        return ancestor == -1 ? SAPSearch.result(-1, -1) : SAPSearch.result(shortestPath, ancestor);
+    }
+
+    // true if an earlier hub already gives an ancestral path of length <= d to the current hub
+    private static boolean isCovered(int[] label, int labelSize, int[] hubDistances, int d) {
+        for (int i = 0; i < labelSize; i += 2) {
+            final int hubDistance = hubDistances[label[i]];
+            if (hubDistance != INFINITY && hubDistance + label[i + 1] <= d) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] append(int[] label, int size, int hub, int distance) {
+        if (label == null) {
+            label = new int[4];
+        }
+        else if (size == label.length) {
+            label = Arrays.copyOf(label, size * 2);
+        }
+
+        label[size] = hub;
+        label[size + 1] = distance;
+        return label;
+    }
+
+    // Vertexes ordered by the number of direct hyponyms, descending
+    private static int[] rankHubs(ArrayDigraph hyponyms) {
+        final int vertexCount = hyponyms.V();
+        int maxDegree = 0;
+        for (int v = 0; v < vertexCount; ++v) {
+            maxDegree = Math.max(maxDegree, hyponyms.outdegree(v));
+        }
+
+        // counting sort, stable by vertex id
+        final int[] starts = new int[maxDegree + 2];
+        for (int v = 0; v < vertexCount; ++v) {
+            ++starts[maxDegree - hyponyms.outdegree(v) + 1];
+        }
+        for (int d = 0; d <= maxDegree; ++d) {
+            starts[d + 1] += starts[d];
+        }
+
+        final int[] order = new int[vertexCount];
+        for (int v = 0; v < vertexCount; ++v) {
+            order[starts[maxDegree - hyponyms.outdegree(v)]++] = v;
+        }
+        return order;
+    }
+}
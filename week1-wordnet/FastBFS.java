@@ -6,25 +6,41 @@ public class FastBFS {
     private static final int DISTANCE_TO_OFFSET = 2;
     private static final int PROPS_COUNT = 3;
 
-    private final int[] vertexes;
+    // Per-vertex state and the queue live outside of the heap for off-heap graphs, so the heap a
+    // search needs doesn't grow with such graphs, and in the heap otherwise
+    private IntStore vertexes;
     private int currentMarkedValue = Integer.MAX_VALUE;
 
     private int currentDistance = 0;
 
+    // statistics since the last start; edges are only counted when asked for
+    private int dequeuedCount = 0;
+    private long scannedEdges = 0;
+    private boolean countingEdges = false;
+
     private int queueStartIndex = 0;
     private int queueEndIndex = 0;
-    private final int[] nextStepQueue;
+    private IntStore nextStepQueue;
 
-    private final ArrayDigraph graph;
+    private final IndexedDigraph graph;
 
-    FastBFS(ArrayDigraph g) {
+    FastBFS(IndexedDigraph g) {
         if (g == null) {
             throw new IllegalArgumentException("Graph is null");
         }
 
         graph = g;
-        vertexes = new int[g.V() * PROPS_COUNT];
-        nextStepQueue = new int[g.V()];
+        // graphs with more vertexes than the per-vertex state can hold in an int[] use the
+        // direct stores as well
+        final long length = (long) g.V() * PROPS_COUNT;
+        if (g instanceof OffHeapDigraph || length > IntStore.MAX_HEAP_LENGTH) {
+            vertexes = IntStore.direct(length);
+            nextStepQueue = IntStore.direct(g.V());
+        }
+        else {
+            vertexes = IntStore.onHeap(length);
+            nextStepQueue = IntStore.onHeap(g.V());
+        }
         reinitialize();
     }
 
@@ -35,6 +51,14 @@ public class FastBFS {
         }
     }
 
+    // sources[0] .. sources[count - 1]
+    public void startBfsInLockstep(int[] sources, int count) {
+        reinitialize();
+        for (int i = 0; i < count; ++i) {
+            addSource(sources[i]);
+        }
+    }
+
     public void startBfsInLockstep(int source) {
         reinitialize();
         addSource(source);
@@ -46,14 +70,21 @@ public class FastBFS {
         }
 
         int v = dequeue();
-        currentDistance = vertexes[v * PROPS_COUNT + DISTANCE_TO_OFFSET];
+        currentDistance = vertexes.get((long) v * PROPS_COUNT + DISTANCE_TO_OFFSET);
+        ++dequeuedCount;
 
-        for (int w : graph.adj(v)) {
-            int vertexBase = w * PROPS_COUNT;
-            if (vertexes[vertexBase + IS_MARKED_OFFSET] != currentMarkedValue) {
-                vertexes[vertexBase + IS_MARKED_OFFSET] = currentMarkedValue;
-                vertexes[vertexBase + DISTANCE_TO_OFFSET] = currentDistance + 1;
-                vertexes[vertexBase + EDGE_TO_OFFSET] = v;
+        final int first = graph.firstEdge(v);
+        final int end = graph.lastEdge(v);
+        if (countingEdges) {
+            scannedEdges += end - first;
+        }
+        for (int e = first; e < end; ++e) {
+            int w = graph.target(e);
+            long vertexBase = (long) w * PROPS_COUNT;
+            if (vertexes.get(vertexBase + IS_MARKED_OFFSET) != currentMarkedValue) {
+                vertexes.set(vertexBase + IS_MARKED_OFFSET, currentMarkedValue);
+                vertexes.set(vertexBase + DISTANCE_TO_OFFSET, currentDistance + 1);
+                vertexes.set(vertexBase + EDGE_TO_OFFSET, v);
 
                 enqueue(w);
             }
@@ -73,21 +104,36 @@ public class FastBFS {
     }
 
     public int distanceTo(int w) {
-        return vertexes[w * PROPS_COUNT + DISTANCE_TO_OFFSET];
+        return vertexes.get((long) w * PROPS_COUNT + DISTANCE_TO_OFFSET);
     }
 
     public boolean hasPathTo(int w) {
-        return vertexes[w * PROPS_COUNT + IS_MARKED_OFFSET] == currentMarkedValue;
+        return vertexes.get((long) w * PROPS_COUNT + IS_MARKED_OFFSET) == currentMarkedValue;
     }
 
     public int getCurrentDistance() {
         return currentDistance;
     }
 
+    // vertexes returned by makeStep since the last start
+    public int getDequeuedCount() {
+        return dequeuedCount;
+    }
+
+    // Counts the edges followed from the dequeued vertexes, off by default
+    public void setCountingEdges(boolean counting) {
+        countingEdges = counting;
+    }
+
+    // edges followed from those vertexes; 0 unless counting
+    public long getScannedEdges() {
+        return scannedEdges;
+    }
+
     private void addSource(int s) {
-        int base = s * PROPS_COUNT;
-        vertexes[base + IS_MARKED_OFFSET] = currentMarkedValue;
-        vertexes[base + DISTANCE_TO_OFFSET] = 0;
+        long base = (long) s * PROPS_COUNT;
+        vertexes.set(base + IS_MARKED_OFFSET, currentMarkedValue);
+        vertexes.set(base + DISTANCE_TO_OFFSET, 0);
         // nextStepQueue.enqueue(s);
         enqueue(s);
     }
@@ -95,25 +141,46 @@ public class FastBFS {
     private void reinitialize() {
         terminate();
         currentDistance = 0;
+        dequeuedCount = 0;
+        scannedEdges = 0;
+
+        if (nextStepQueue.length() < graph.V()) {
+            grow();
+        }
 
         if (currentMarkedValue == Integer.MAX_VALUE) {
-            for (int i = 0; i < vertexes.length; i += PROPS_COUNT) {
-                vertexes[i + IS_MARKED_OFFSET] = Integer.MIN_VALUE;
-                vertexes[i + EDGE_TO_OFFSET] = 0;
-                vertexes[i + DISTANCE_TO_OFFSET] = Integer.MAX_VALUE;
-            }
+            clearVertexes(0);
             currentMarkedValue = Integer.MIN_VALUE;
         }
 
         ++currentMarkedValue;
     }
 
+    // Vertexes were added to the graph since the last search. The capacity at least doubles, so
+    // every vertex is copied a constant number of times on average. Computed in long, the copies
+    // move off the heap once they no longer fit into an int[].
+    private void grow() {
+        final long capacity = Math.max(graph.V(), 2 * nextStepQueue.length());
+        final long oldLength = vertexes.length();
+        vertexes = vertexes.copyOf(capacity * PROPS_COUNT);
+        nextStepQueue = nextStepQueue.copyOf(capacity);
+        clearVertexes(oldLength);
+    }
+
+    private void clearVertexes(long from) {
+        for (long i = from; i < vertexes.length(); i += PROPS_COUNT) {
+            vertexes.set(i + IS_MARKED_OFFSET, Integer.MIN_VALUE);
+            vertexes.set(i + EDGE_TO_OFFSET, 0);
+            vertexes.set(i + DISTANCE_TO_OFFSET, Integer.MAX_VALUE);
+        }
+    }
+
     private void enqueue(int v) {
-        nextStepQueue[queueEndIndex++] = v;
+        nextStepQueue.set(queueEndIndex++, v);
     }
 
     private int dequeue() {
-        return nextStepQueue[queueStartIndex++];
+        return nextStepQueue.get(queueStartIndex++);
     }
 
     public Iterable<Integer> pathTo(int v) {
@@ -123,7 +190,7 @@ public class FastBFS {
 
         Stack<Integer> path = new Stack<Integer>();
         int x = v;
-        for (; vertexes[x + DISTANCE_TO_OFFSET] != 0; x = vertexes[x + EDGE_TO_OFFSET]) {
+        for (; vertexes.get(x + DISTANCE_TO_OFFSET) != 0; x = vertexes.get(x + EDGE_TO_OFFSET)) {
             path.push(x);
         }
         path.push(x);
@@ -0,0 +1,294 @@
+import java.util.Arrays;
+
+// Level-synchronous bidirectional search for the shortest ancestral path. Both sides go up
+// the hypernym graph one whole level at a time, and the side whose frontier has fewer outgoing
+// edges is always expanded next. Frontiers are kept both as vertex lists and as bitsets: when a
+// frontier becomes large compared to the unexplored part of the graph, the level is expanded
+// bottom-up instead, by checking for every unvisited vertex whether one of its hyponyms is in
+// the frontier (direction-optimizing BFS, Beamer et al.).
+class FrontierSearch {
+    // switch to bottom-up when frontier edges > unexplored edges / ALPHA
+    private static final int ALPHA = 14;
+    // switch back to top-down when frontier vertexes < V / BETA
+    private static final int BETA = 24;
+
+    private final ArrayDigraph graph;
+    private final ArrayDigraph hyponyms;
+
+    private final Side vSide;
+    private final Side wSide;
+    private int currentMark = 0;
+
+    private int shortestPath;
+    private int ancestor;
+    private boolean terminatedEarly;
+
+    FrontierSearch(ArrayDigraph graph, ArrayDigraph hyponyms) {
+        this.graph = graph;
+        this.hyponyms = hyponyms;
+        vSide = new Side(graph.V());
+        wSide = new Side(graph.V());
+    }
+
+    // only paths shorter than limit are looked for
+    long find(int[] v, int vCount, int[] w, int wCount, int limit) {
+        start(limit);
+        for (int i = 0; i < vCount; ++i) {
+            vSide.addSource(v[i]);
+        }
+        for (int i = 0; i < wCount; ++i) {
+            wSide.addSource(w[i]);
+        }
+        return search();
+    }
+
+    // number of vertexes expanded or, bottom-up, examined by the last query
+    int expandedVertexes() {
+        return vSide.expanded + wSide.expanded;
+    }
+
+    int vExpanded() {
+        return vSide.expanded;
+    }
+
+    int wExpanded() {
+        return wSide.expanded;
+    }
+
+    long scannedEdges() {
+        return vSide.scannedEdges + wSide.scannedEdges;
+    }
+
+    // true if the last query stopped a side with a non-empty frontier
+    boolean terminatedEarly() {
+        return terminatedEarly;
+    }
+
+    private void start(int limit) {
+        // the graph may have grown since the last query
+        if (vSide.marks.length < graph.V()) {
+            final int capacity = Math.max(graph.V(), 2 * vSide.marks.length);
+            vSide.grow(capacity);
+            wSide.grow(capacity);
+        }
+
+        if (currentMark == Integer.MAX_VALUE) {
+            vSide.clearMarks();
+            wSide.clearMarks();
+            currentMark = 0;
+        }
+        ++currentMark;
+
+        vSide.reset();
+        wSide.reset();
+        shortestPath = limit;
+        ancestor = -1;
+    }
+
+    private long search() {
+        checkMeetings(vSide, wSide);
+
+        while (true) {
+            final boolean vActive = vSide.isActive();
+            final boolean wActive = wSide.isActive();
+            if (!vActive && !wActive) {
+                break;
+            }
+
+            if (vActive && (!wActive || vSide.frontierEdges <= wSide.frontierEdges)) {
+                expand(vSide, wSide);
+            }
+            else {
+                expand(wSide, vSide);
+            }
+        }
+
+        terminatedEarly = vSide.frontierSize > 0 || wSide.frontierSize > 0;
+
+        return ancestor == -1 ? SAPSearch.result(-1, -1) : SAPSearch.result(shortestPath, ancestor);
+    }
+
+    private void expand(Side side, Side other) {
+        if (side.bottomUp) {
+            side.bottomUp = side.frontierSize >= graph.V() / BETA;
+        }
+        else {
+            side.bottomUp = side.frontierEdges > side.unexploredEdges / ALPHA;
+        }
+
+        if (side.bottomUp) {
+            expandBottomUp(side);
+        }
+        else {
+            expandTopDown(side);
+        }
+
+        side.swapFrontiers();
+        checkMeetings(side, other);
+    }
+
+    private void expandTopDown(Side side) {
+        final int nextLevel = side.level + 1;
+        for (int i = 0; i < side.frontierSize; ++i) {
+            final int u = side.frontier[i];
+            for (int e = graph.firstEdge(u), end = graph.lastEdge(u); e < end; ++e) {
+                final int p = graph.target(e);
+                if (side.marks[p] != currentMark) {
+                    side.visit(p, nextLevel);
+                }
+            }
+        }
+        side.expanded += side.frontierSize;
+        side.scannedEdges += side.frontierEdges;
+    }
+
+    private void expandBottomUp(Side side) {
+        final int nextLevel = side.level + 1;
+        final int vertexCount = graph.V();
+        for (int x = 0; x < vertexCount; ++x) {
+            if (side.marks[x] == currentMark) {
+                continue;
+            }
+
+            ++side.expanded;
+            final int first = hyponyms.firstEdge(x);
+            final int end = hyponyms.lastEdge(x);
+            int e = first;
+            while (e < end && !side.inFrontier(hyponyms.target(e))) {
+                ++e;
+            }
+
+            if (e < end) {
+                side.visit(x, nextLevel);
+                side.scannedEdges += e - first + 1;
+            }
+            else {
+                side.scannedEdges += end - first;
+            }
+        }
+    }
+
+    // updates the best path with vertexes of the new frontier of side already reached by other
+    private void checkMeetings(Side side, Side other) {
+        for (int i = 0; i < side.frontierSize; ++i) {
+            final int u = side.frontier[i];
+            if (other.marks[u] == currentMark) {
+                final int candidate = side.level + other.distances[u];
+                if (candidate < shortestPath) {
+                    shortestPath = candidate;
+                    ancestor = u;
+                }
+            }
+        }
+    }
+
+    private final class Side {
+        private int[] marks;
+        private int[] distances;
+
+        private int[] frontier;
+        private int frontierSize;
+        private long[] frontierBits;
+        private int[] next;
+        private int nextSize;
+        private long[] nextBits;
+
+        private int level;
+        private long frontierEdges;
+        // edges from hyponyms of not yet visited vertexes, what a bottom-up step would scan
+        private long unexploredEdges;
+        private boolean bottomUp;
+
+        private int expanded;
+        private long scannedEdges;
+
+        Side(int vertexCount) {
+            marks = new int[vertexCount];
+            distances = new int[vertexCount];
+            frontier = new int[vertexCount];
+            next = new int[vertexCount];
+            frontierBits = new long[(vertexCount + 63) >>> 6];
+            nextBits = new long[frontierBits.length];
+        }
+
+        // new vertexes are unmarked; the lists keep their contents for reset
+        void grow(int capacity) {
+            marks = Arrays.copyOf(marks, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+            frontier = Arrays.copyOf(frontier, capacity);
+            next = Arrays.copyOf(next, capacity);
+            frontierBits = Arrays.copyOf(frontierBits, (capacity + 63) >>> 6);
+            nextBits = Arrays.copyOf(nextBits, frontierBits.length);
+        }
+
+        void clearMarks() {
+            Arrays.fill(marks, 0);
+        }
+
+        void reset() {
+            clearBits(frontierBits, frontier, frontierSize);
+            frontierSize = 0;
+            nextSize = 0;
+            level = 0;
+            frontierEdges = 0;
+            unexploredEdges = hyponyms.E();
+            bottomUp = false;
+            expanded = 0;
+            scannedEdges = 0;
+        }
+
+        void addSource(int s) {
+            if (marks[s] != currentMark) {
+                marks[s] = currentMark;
+                distances[s] = 0;
+                frontier[frontierSize++] = s;
+                frontierBits[s >>> 6] |= 1L << s;
+                frontierEdges += graph.outdegree(s);
+                unexploredEdges -= hyponyms.outdegree(s);
+            }
+        }
+
+        boolean isActive() {
+            // anything found on the next level is at least level + 1 away
+            return frontierSize > 0 && level + 1 < shortestPath;
+        }
+
+        boolean inFrontier(int v) {
+            return (frontierBits[v >>> 6] & (1L << v)) != 0;
+        }
+
+        void visit(int v, int distance) {
+            marks[v] = currentMark;
+            distances[v] = distance;
+            next[nextSize++] = v;
+            nextBits[v >>> 6] |= 1L << v;
+        }
+
+        void swapFrontiers() {
+            clearBits(frontierBits, frontier, frontierSize);
+
+            int[] list = frontier;
+            frontier = next;
+            next = list;
+            long[] bits = frontierBits;
+            frontierBits = nextBits;
+            nextBits = bits;
+
+            frontierSize = nextSize;
+            nextSize = 0;
+            ++level;
+
+            frontierEdges = 0;
+            for (int i = 0; i < frontierSize; ++i) {
+                frontierEdges += graph.outdegree(frontier[i]);
+                unexploredEdges -= hyponyms.outdegree(frontier[i]);
+            }
+        }
+
+        private void clearBits(long[] bits, int[] vertexes, int count) {
+            for (int i = 0; i < count; ++i) {
+                bits[vertexes[i] >>> 6] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+// Read-only view of a digraph whose out-edges are numbered: the edges leaving v have the indexes
+// firstEdge(v) .. lastEdge(v) - 1. Implemented by ArrayDigraph on the heap and by OffHeapDigraph
+// for graphs too big for it.
+public interface IndexedDigraph {
+    int V();
+
+    int E();
+
+    // index of the first edge leaving v
+    int firstEdge(int v);
+
+    // index after the last edge leaving v
+    int lastEdge(int v);
+
+    // head of the edge with the given index
+    int target(int edge);
+
+    int outdegree(int v);
+}
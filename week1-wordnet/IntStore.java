@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// Fixed-length array of ints addressed by long indexes. On the heap it wraps an int[]; off the
+// heap it spreads the values over direct or memory-mapped buffers of CHUNK_SIZE ints each,
+// so the heap only holds the table of chunks and the length isn't bounded by the array size limit.
+// Direct memory counts against -XX:MaxDirectMemorySize (the maximum heap size by default);
+// mapped memory is paged by the OS.
+final class IntStore {
+    private static final int CHUNK_SHIFT = 28;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = (int) CHUNK_SIZE - 1;
+    // longest store kept in an int[], some VMs reserve a few header words of the array size limit
+    static final int MAX_HEAP_LENGTH = Integer.MAX_VALUE - 8;
+
+    // exactly one of them is set; a single class keeps the heap accesses free of type checks
+    private final int[] values;
+    private final IntBuffer[] chunks;
+    private final long length;
+
+    private IntStore(int[] values, IntBuffer[] chunks, long length) {
+        this.values = values;
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    static IntStore onHeap(long length) {
+        if (length < 0 || length > MAX_HEAP_LENGTH) {
+            throw new IllegalArgumentException("Heap store length " + length + " is out of range");
+        }
+        return new IntStore(new int[(int) length], null, length);
+    }
+
+    // zero-filled, outside of the heap
+    static IntStore direct(long length) {
+        final IntBuffer[] chunks = new IntBuffer[chunksCount(length)];
+        for (int i = 0; i < chunks.length; ++i) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkLength(length, i) * Integer.BYTES)
+                                  .order(ByteOrder.nativeOrder())
+                                  .asIntBuffer();
+        }
+        return new IntStore(null, chunks, length);
+    }
+
+    // Read-only view of length big-endian ints (as DataOutputStream writes them) starting at the
+    // given byte position of the file. The mapping stays valid after the channel is closed.
+    static IntStore map(FileChannel channel, long position, long length) throws IOException {
+        final IntBuffer[] chunks = new IntBuffer[chunksCount(length)];
+        for (int i = 0; i < chunks.length; ++i) {
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + i * CHUNK_SIZE * Integer.BYTES,
+                                    (long) chunkLength(length, i) * Integer.BYTES)
+                               .asIntBuffer();
+        }
+        return new IntStore(null, chunks, length);
+    }
+
+    int get(long index) {
+        if (values != null) {
+            return values[(int) index];
+        }
+        return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) index & CHUNK_MASK);
+    }
+
+    void set(long index, int value) {
+        if (values != null) {
+            values[(int) index] = value;
+        }
+        else {
+            chunks[(int) (index >>> CHUNK_SHIFT)].put((int) index & CHUNK_MASK, value);
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    // Copy of the first length values, zero-filled past the end of this store. Heap stores stay
+    // on the heap while they fit into an int[]; longer copies and copies of off-heap stores are
+    // direct.
+    IntStore copyOf(long length) {
+        if (values != null && length <= MAX_HEAP_LENGTH) {
+            if (length < 0) {
+                throw new IllegalArgumentException("Negative length " + length);
+            }
+            return new IntStore(Arrays.copyOf(values, (int) length), null, length);
+        }
+
+        final IntStore copy = direct(length);
+        for (long i = 0, end = Math.min(length, this.length); i < end; ++i) {
+            copy.set(i, get(i));
+        }
+        return copy;
+    }
+
+    private static int chunksCount(long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative length " + length);
+        }
+        return (int) ((length + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+    }
+
+    private static int chunkLength(long length, int chunk) {
+        return (int) Math.min(CHUNK_SIZE, length - chunk * CHUNK_SIZE);
+    }
+}
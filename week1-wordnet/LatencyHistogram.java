@@ -0,0 +1,52 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Concurrent histogram of latencies with one bucket per power of two nanoseconds: bucket i holds
+// values in [2^(i - 1), 2^i), bucket 0 holds 0. Recording is one LongAdder increment.
+class LatencyHistogram {
+    static final int BUCKETS_COUNT = Long.SIZE + 1;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS_COUNT];
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS_COUNT; ++i) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        buckets[Long.SIZE - Long.numberOfLeadingZeros(Math.max(nanos, 0))].increment();
+    }
+
+    long[] counts() {
+        long[] counts = new long[BUCKETS_COUNT];
+        for (int i = 0; i < BUCKETS_COUNT; ++i) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    // upper bound of the bucket holding the given fraction of values; 0 if there are none
+    long percentile(double fraction) {
+        long[] counts = counts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS_COUNT; ++i) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+}
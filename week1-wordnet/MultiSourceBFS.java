@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+// Bit-parallel BFS from up to 64 vertex sets at once (MS-BFS, Then et al.). Every vertex keeps
+// a 64-bit mask of the sources that have reached it, so one upward traversal serves all sources.
+// Whenever a vertex is reached by new sources an event (level, sources mask) is recorded; the
+// shortest ancestral path between sources i and j is then the minimum of la + lb over the
+// events (la, A) and (lb, B) of any vertex with i in A and j in B. The events are processed in
+// increasing order of la + lb, so every pair gets its length the first time it is seen.
+class MultiSourceBFS {
+    static final int MAX_SOURCES = Long.SIZE;
+
+    private final ArrayDigraph graph;
+
+    private long[] seen;
+    private long[] visit;
+    private long[] visitNext;
+    private int[] frontier;
+    private int[] next;
+
+    // events of a vertex form a list through eventNext, newest first; eventHead is -1 if none
+    private int[] eventHead;
+    private int[] eventNext = new int[1024];
+    private int[] eventLevel = new int[1024];
+    private long[] eventSources = new long[1024];
+    private int eventsCount;
+
+    // vertexes with events, to reset the state after a run
+    private int[] touched;
+    private int touchedCount;
+
+    MultiSourceBFS(ArrayDigraph graph) {
+        this.graph = graph;
+        final int vertexCount = graph.V();
+        seen = new long[vertexCount];
+        visit = new long[vertexCount];
+        visitNext = new long[vertexCount];
+        frontier = new int[vertexCount];
+        next = new int[vertexCount];
+        eventHead = new int[vertexCount];
+        touched = new int[vertexCount];
+        Arrays.fill(eventHead, -1);
+    }
+
+    // Lengths between sources[sourceIndexes[i]] and sources[sourceIndexes[j]] for all i, j, written
+    // to result[sourceIndexes[i]][sourceIndexes[j]]; -1 if there is no ancestral path
+    void lengths(int[][] sources, int[] sourceIndexes, int[][] result) {
+        final int count = sourceIndexes.length;
+        if (count > MAX_SOURCES) {
+            throw new IllegalArgumentException("At most " + MAX_SOURCES + " sources per run");
+        }
+
+        if (seen.length < graph.V()) {
+            grow();
+        }
+
+        try {
+            int frontierSize = 0;
+            for (int i = 0; i < count; ++i) {
+                final long bit = 1L << i;
+                for (int s : sources[sourceIndexes[i]]) {
+                    if (visit[s] == 0) {
+                        frontier[frontierSize++] = s;
+                    }
+                    visit[s] |= bit;
+                    seen[s] |= bit;
+                }
+            }
+
+            int maxLevel = 0;
+            for (int i = 0; i < frontierSize; ++i) {
+                addEvent(frontier[i], 0, visit[frontier[i]]);
+            }
+
+            for (int level = 0; frontierSize > 0; ++level) {
+                int nextSize = 0;
+                for (int i = 0; i < frontierSize; ++i) {
+                    final int u = frontier[i];
+                    final long sourcesMask = visit[u];
+                    for (int e = graph.firstEdge(u), end = graph.lastEdge(u); e < end; ++e) {
+                        final int p = graph.target(e);
+                        final long fresh = sourcesMask & ~seen[p];
+                        if (fresh != 0) {
+                            if (visitNext[p] == 0) {
+                                next[nextSize++] = p;
+                            }
+                            visitNext[p] |= fresh;
+                            seen[p] |= fresh;
+                        }
+                    }
+                    visit[u] = 0;
+                }
+
+                for (int i = 0; i < nextSize; ++i) {
+                    final int p = next[i];
+                    visit[p] = visitNext[p];
+                    visitNext[p] = 0;
+                    addEvent(p, level + 1, visit[p]);
+                }
+
+                if (nextSize > 0) {
+                    maxLevel = level + 1;
+                }
+
+                int[] swap = frontier;
+                frontier = next;
+                next = swap;
+                frontierSize = nextSize;
+            }
+
+            collectLengths(sourceIndexes, result, maxLevel);
+        }
+        finally {
+            reset();
+        }
+    }
+
+    // The graph has grown since the last run; all state is reset between runs, so new vertexes
+    // only need eventHead set. The capacity at least doubles to keep growing cheap.
+    private void grow() {
+        final int oldCapacity = seen.length;
+        final int capacity = Math.max(graph.V(), 2 * oldCapacity);
+        seen = Arrays.copyOf(seen, capacity);
+        visit = Arrays.copyOf(visit, capacity);
+        visitNext = Arrays.copyOf(visitNext, capacity);
+        frontier = Arrays.copyOf(frontier, capacity);
+        next = Arrays.copyOf(next, capacity);
+        eventHead = Arrays.copyOf(eventHead, capacity);
+        touched = Arrays.copyOf(touched, capacity);
+        Arrays.fill(eventHead, oldCapacity, capacity, -1);
+    }
+
+    private void collectLengths(int[] sourceIndexes, int[][] result, int maxLevel) {
+        final int count = sourceIndexes.length;
+        for (int i = 0; i < count; ++i) {
+            for (int j = 0; j < count; ++j) {
+                result[sourceIndexes[i]][sourceIndexes[j]] = -1;
+            }
+        }
+
+        // bucket event pairs of every vertex by la + lb
+        final int[] bucketStarts = new int[2 * maxLevel + 2];
+        long pairsCount = 0;
+        for (int t = 0; t < touchedCount; ++t) {
+            for (int a = eventHead[touched[t]]; a != -1; a = eventNext[a]) {
+                for (int b = a; b != -1; b = eventNext[b]) {
+                    ++bucketStarts[eventLevel[a] + eventLevel[b] + 1];
+                    ++pairsCount;
+                }
+            }
+        }
+
+        if (pairsCount > Integer.MAX_VALUE / 2) {
+            throw new IllegalStateException("Too many events for one run");
+        }
+
+        for (int s = 0; s <= 2 * maxLevel; ++s) {
+            bucketStarts[s + 1] += bucketStarts[s];
+        }
+
+        final int[] pairs = new int[(int) pairsCount * 2];
+        final int[] positions = Arrays.copyOf(bucketStarts, bucketStarts.length - 1);
+        for (int t = 0; t < touchedCount; ++t) {
+            for (int a = eventHead[touched[t]]; a != -1; a = eventNext[a]) {
+                for (int b = a; b != -1; b = eventNext[b]) {
+                    final int position = positions[eventLevel[a] + eventLevel[b]]++;
+                    pairs[2 * position] = a;
+                    pairs[2 * position + 1] = b;
+                }
+            }
+        }
+
+        // known[i] has bit j set once the length between sources i and j is known
+        final long[] known = new long[count];
+        for (int s = 0; s <= 2 * maxLevel; ++s) {
+            for (int position = bucketStarts[s]; position < bucketStarts[s + 1]; ++position) {
+                final long a = eventSources[pairs[2 * position]];
+                final long b = eventSources[pairs[2 * position + 1]];
+                assignLengths(a, b, s, known, sourceIndexes, result);
+                assignLengths(b, a, s, known, sourceIndexes, result);
+            }
+        }
+    }
+
+    private static void assignLengths(long rows, long columns, int length, long[] known,
+                                      int[] sourceIndexes, int[][] result) {
+        for (long r = rows; r != 0; r &= r - 1) {
+            final int i = Long.numberOfTrailingZeros(r);
+            final long fresh = columns & ~known[i];
+            if (fresh == 0) {
+                continue;
+            }
+
+            known[i] |= fresh;
+            final int[] row = result[sourceIndexes[i]];
+            for (long c = fresh; c != 0; c &= c - 1) {
+                row[sourceIndexes[Long.numberOfTrailingZeros(c)]] = length;
+            }
+        }
+    }
+
+    private void addEvent(int v, int level, long sources) {
+        if (eventsCount == eventNext.length) {
+            eventNext = Arrays.copyOf(eventNext, eventsCount * 2);
+            eventLevel = Arrays.copyOf(eventLevel, eventsCount * 2);
+            eventSources = Arrays.copyOf(eventSources, eventsCount * 2);
+        }
+
+        if (eventHead[v] == -1) {
+            touched[touchedCount++] = v;
+        }
+
+        eventNext[eventsCount] = eventHead[v];
+        eventLevel[eventsCount] = level;
+        eventSources[eventsCount] = sources;
+        eventHead[v] = eventsCount++;
+    }
+
+    private void reset() {
+        for (int t = 0; t < touchedCount; ++t) {
+            final int v = touched[t];
+            seen[v] = 0;
+            visit[v] = 0;
+            visitNext[v] = 0;
+            eventHead[v] = -1;
+        }
+        touchedCount = 0;
+        eventsCount = 0;
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.Arrays;
+
+// Nouns closest to a set of source synsets by SAP distance. The distance to a synset x is the
+// minimum over common ancestors a of up(a) + down(a, x): the path from the sources up to a plus
+// the path from a down to x. So the search first goes up the hypernym graph and then runs a single
+// BFS down the hyponym graph in which every ancestor a joins the frontier at level up(a); synsets,
+// and with them their nouns, come out level by level in increasing distance order.
+// Instances are not thread-safe.
+class NeighborhoodSearch {
+    private final ArrayDigraph graph;
+    private final ArrayDigraph hyponyms;
+    private final NounDictionary dictionary;
+
+    private int[] upMarks;
+    private int[] downMarks;
+    private int[] nounMarks;
+    private int currentMark = 0;
+
+    // ancestors in upward BFS order, so their distances never decrease; the first expanded ones
+    // had their hypernyms added and the first joined ones were added to the downward BFS
+    private int[] ancestors;
+    private int[] ancestorDistances;
+    private int ancestorsCount;
+    private int expanded;
+    private int joined;
+
+    private int[] frontier;
+    private int[] next;
+
+    // found noun indexes ordered by distance, then by noun
+    private int[] nouns = new int[64];
+    private int[] nounDistances = new int[64];
+    private int nounsCount;
+
+    NeighborhoodSearch(ArrayDigraph graph, ArrayDigraph hyponyms, NounDictionary dictionary) {
+        this.graph = graph;
+        this.hyponyms = hyponyms;
+        this.dictionary = dictionary;
+
+        final int vertexCount = graph.V();
+        upMarks = new int[vertexCount];
+        downMarks = new int[vertexCount];
+        nounMarks = new int[dictionary.nounsCount()];
+        ancestors = new int[vertexCount];
+        ancestorDistances = new int[vertexCount];
+        frontier = new int[vertexCount];
+        next = new int[vertexCount];
+    }
+
+    // Finds nouns within maxDistance of the sources except excludedNoun (-1 for none), stopping
+    // after the first level at which at least limit nouns are found; returns their number.
+    // Both traversals advance one level at a time, so the work depends on how far the search
+    // gets, not on the size of the graph.
+    int find(int[] sources, int maxDistance, int limit, int excludedNoun) {
+        start();
+        addSources(sources);
+
+        int frontierSize = 0;
+        for (int level = 0; level <= maxDistance && nounsCount < limit; ++level) {
+            if (level > 0) {
+                goUp(level - 1);
+            }
+
+            while (joined < ancestorsCount && ancestorDistances[joined] == level) {
+                final int a = ancestors[joined++];
+                if (downMarks[a] != currentMark) {
+                    downMarks[a] = currentMark;
+                    frontier[frontierSize++] = a;
+                }
+            }
+
+            if (frontierSize == 0 && joined == ancestorsCount && expanded == ancestorsCount) {
+                break;
+            }
+
+            final int levelStart = nounsCount;
+            int nextSize = 0;
+            for (int i = 0; i < frontierSize; ++i) {
+                final int x = frontier[i];
+                addNouns(x, level, excludedNoun);
+
+                if (level < maxDistance) {
+                    for (int e = hyponyms.firstEdge(x), end = hyponyms.lastEdge(x); e < end; ++e) {
+                        final int y = hyponyms.target(e);
+                        if (downMarks[y] != currentMark) {
+                            downMarks[y] = currentMark;
+                            next[nextSize++] = y;
+                        }
+                    }
+                }
+            }
+            Arrays.sort(nouns, levelStart, nounsCount);
+
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            frontierSize = nextSize;
+        }
+
+        return nounsCount;
+    }
+
+    // noun index of the i-th found noun
+    int noun(int i) {
+        return nouns[i];
+    }
+
+    int distance(int i) {
+        return nounDistances[i];
+    }
+
+    private void start() {
+        // synsets and nouns may have been added since the last search; new ones are unmarked
+        // and the capacity at least doubles, so growing costs O(1) per added synset on average
+        if (upMarks.length < graph.V()) {
+            final int capacity = Math.max(graph.V(), 2 * upMarks.length);
+            upMarks = Arrays.copyOf(upMarks, capacity);
+            downMarks = Arrays.copyOf(downMarks, capacity);
+            ancestors = new int[capacity];
+            ancestorDistances = new int[capacity];
+            frontier = new int[capacity];
+            next = new int[capacity];
+        }
+        if (nounMarks.length < dictionary.nounsCount()) {
+            nounMarks = Arrays.copyOf(nounMarks, Math.max(dictionary.nounsCount(), 2 * nounMarks.length));
+        }
+
+        if (currentMark == Integer.MAX_VALUE) {
+            Arrays.fill(upMarks, 0);
+            Arrays.fill(downMarks, 0);
+            Arrays.fill(nounMarks, 0);
+            currentMark = 0;
+        }
+        ++currentMark;
+        nounsCount = 0;
+    }
+
+    private void addSources(int[] sources) {
+        ancestorsCount = 0;
+        expanded = 0;
+        joined = 0;
+        for (int s : sources) {
+            if (upMarks[s] != currentMark) {
+                upMarks[s] = currentMark;
+                ancestors[ancestorsCount] = s;
+                ancestorDistances[ancestorsCount++] = 0;
+            }
+        }
+    }
+
+    // adds the ancestors at distance + 1 by expanding the ones at the given distance
+    private void goUp(int distance) {
+        for (; expanded < ancestorsCount && ancestorDistances[expanded] == distance; ++expanded) {
+            final int u = ancestors[expanded];
+            for (int e = graph.firstEdge(u), end = graph.lastEdge(u); e < end; ++e) {
+                final int p = graph.target(e);
+                if (upMarks[p] != currentMark) {
+                    upMarks[p] = currentMark;
+                    ancestors[ancestorsCount] = p;
+                    ancestorDistances[ancestorsCount++] = distance + 1;
+                }
+            }
+        }
+    }
+
+    private void addNouns(int synset, int distance, int excludedNoun) {
+        for (int i = dictionary.firstNoun(synset), end = dictionary.lastNoun(synset); i < end; ++i) {
+            final int noun = dictionary.nounAt(i);
+            if (noun == excludedNoun || nounMarks[noun] == currentMark) {
+                continue;
+            }
+
+            if (nounsCount == nouns.length) {
+                nouns = Arrays.copyOf(nouns, nounsCount * 2);
+                nounDistances = Arrays.copyOf(nounDistances, nounsCount * 2);
+            }
+            nounMarks[noun] = currentMark;
+            nouns[nounsCount] = noun;
+            nounDistances[nounsCount++] = distance;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Noun -> synset ids and synset id -> synset tables kept in primitive arrays. All nouns are
+// stored back to back in one char array, and are found through an open-addressing table of
+// noun indexes, so there are no per-noun String, map entry or boxed Integer objects. Each noun
+// has one int[] of synset ids in synsets file order. Nouns of the built dictionary are sorted;
+// nouns of synsets added later follow them in order of addition. Adding synsets must not
+// overlap with reading the dictionary.
+class NounDictionary {
+    // Vertex id -> synset
+    private String[] synsets;
+    private int synsetsCount;
+
+    // Noun i is nounChars[nounOffsets[i]] .. nounChars[nounOffsets[i + 1] - 1]
+    private char[] nounChars;
+    private int[] nounOffsets;
+    private int[][] postings;
+    private int nounsCount;
+
+    // noun index + 1 or 0 for an empty slot; the length is a power of two
+    private int[] slots;
+
+    // Nouns of synset id are synsetNouns[synsetNounOffsets[id]] .. [synsetNounOffsets[id + 1] - 1],
+    // ascending noun indexes
+    private int[] synsetNounOffsets;
+    private int[] synsetNouns;
+
+    private NounDictionary(String[] synsets, char[] nounChars, int[] nounOffsets, int[][] postings) {
+        this.synsets = synsets;
+        this.synsetsCount = synsets.length;
+        this.nounChars = nounChars;
+        this.nounOffsets = nounOffsets;
+        this.postings = postings;
+        this.nounsCount = postings.length;
+        this.slots = buildSlots(Integer.highestOneBit(Math.max(nounsCount * 2 - 1, 1)) << 1);
+
+        synsetNounOffsets = new int[synsetsCount + 1];
+        for (int[] ids : postings) {
+            for (int id : ids) {
+                ++synsetNounOffsets[id + 1];
+            }
+        }
+        for (int id = 0; id < synsetsCount; ++id) {
+            synsetNounOffsets[id + 1] += synsetNounOffsets[id];
+        }
+
+        synsetNouns = new int[synsetNounOffsets[synsetsCount]];
+        final int[] next = Arrays.copyOf(synsetNounOffsets, synsetsCount);
+        for (int index = 0; index < nounsCount; ++index) {
+            for (int id : postings[index]) {
+                synsetNouns[next[id]++] = index;
+            }
+        }
+    }
+
+    static NounDictionary build(WordNetLoader.Synsets loaded) {
+        final int synsetsCount = loaded.count;
+        final String[] synsets = new String[synsetsCount];
+
+        // noun -> temporary index in order of first appearance
+        final HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+        int[] occurrenceNouns = new int[synsetsCount * 2];
+        int[] occurrenceIds = new int[synsetsCount * 2];
+        int occurrencesCount = 0;
+
+        for (int i = 0; i < synsetsCount; ++i) {
+            final int id = loaded.ids[i];
+            if (id < 0 || id >= synsetsCount) {
+                throw new IllegalArgumentException(
+                        "Synset id " + id + " is not between 0 and " + (synsetsCount - 1));
+            }
+            if (synsets[id] != null) {
+                throw new IllegalArgumentException("Synset id " + id + " is used twice");
+            }
+
+            final String synset = loaded.synsets[i];
+            synsets[id] = synset;
+
+            int nounStart = 0;
+            while (nounStart <= synset.length()) {
+                int nounEnd = synset.indexOf(' ', nounStart);
+                if (nounEnd == -1) {
+                    nounEnd = synset.length();
+                }
+
+                if (nounEnd > nounStart) {
+                    if (occurrencesCount == occurrenceNouns.length) {
+                        occurrenceNouns = Arrays.copyOf(occurrenceNouns, occurrencesCount * 2);
+                        occurrenceIds = Arrays.copyOf(occurrenceIds, occurrencesCount * 2);
+                    }
+
+                    final String noun = synset.substring(nounStart, nounEnd);
+                    Integer index = indexes.get(noun);
+                    if (index == null) {
+                        index = indexes.size();
+                        indexes.put(noun, index);
+                    }
+
+                    occurrenceNouns[occurrencesCount] = index;
+                    occurrenceIds[occurrencesCount++] = id;
+                }
+                nounStart = nounEnd + 1;
+            }
+        }
+
+        final int nounsCount = indexes.size();
+        final String[] sorted = indexes.keySet().toArray(new String[nounsCount]);
+        Arrays.sort(sorted);
+
+        final int[] sortedIndexes = new int[nounsCount];
+        int charsCount = 0;
+        for (int i = 0; i < nounsCount; ++i) {
+            sortedIndexes[indexes.get(sorted[i])] = i;
+            charsCount += sorted[i].length();
+        }
+
+        final char[] nounChars = new char[charsCount];
+        final int[] nounOffsets = new int[nounsCount + 1];
+        for (int i = 0; i < nounsCount; ++i) {
+            sorted[i].getChars(0, sorted[i].length(), nounChars, nounOffsets[i]);
+            nounOffsets[i + 1] = nounOffsets[i] + sorted[i].length();
+        }
+
+        final int[] postingSizes = new int[nounsCount];
+        for (int i = 0; i < occurrencesCount; ++i) {
+            ++postingSizes[sortedIndexes[occurrenceNouns[i]]];
+        }
+
+        final int[][] postings = new int[nounsCount][];
+        for (int i = 0; i < nounsCount; ++i) {
+            postings[i] = new int[postingSizes[i]];
+            postingSizes[i] = 0;
+        }
+
+        for (int i = 0; i < occurrencesCount; ++i) {
+            final int noun = sortedIndexes[occurrenceNouns[i]];
+            postings[noun][postingSizes[noun]++] = occurrenceIds[i];
+        }
+
+        return new NounDictionary(synsets, nounChars, nounOffsets, postings);
+    }
+
+    int synsetsCount() {
+        return synsetsCount;
+    }
+
+    int nounsCount() {
+        return nounsCount;
+    }
+
+    // Adds a synset (nouns separated by spaces) with the next free id and returns the id.
+    // Costs O(length of the synset + synset ids of its nouns), amortized.
+    int addSynset(String synset) {
+        final int id = synsetsCount;
+        if (id == synsets.length) {
+            synsets = Arrays.copyOf(synsets, Math.max(id * 2, 16));
+            synsetNounOffsets = Arrays.copyOf(synsetNounOffsets, synsets.length + 1);
+        }
+        synsets[id] = synset;
+        synsetNounOffsets[id + 1] = synsetNounOffsets[id];
+
+        int nounStart = 0;
+        while (nounStart <= synset.length()) {
+            int nounEnd = synset.indexOf(' ', nounStart);
+            if (nounEnd == -1) {
+                nounEnd = synset.length();
+            }
+
+            if (nounEnd > nounStart) {
+                final String noun = synset.substring(nounStart, nounEnd);
+                int index = indexOf(noun);
+                if (index == -1) {
+                    index = addNoun(noun);
+                }
+
+                final int[] ids = postings[index];
+                postings[index] = Arrays.copyOf(ids, ids.length + 1);
+                postings[index][ids.length] = id;
+
+                final int position = synsetNounOffsets[id + 1]++;
+                if (position == synsetNouns.length) {
+                    synsetNouns = Arrays.copyOf(synsetNouns, Math.max(position * 2, 16));
+                }
+                synsetNouns[position] = index;
+            }
+            nounStart = nounEnd + 1;
+        }
+
+        Arrays.sort(synsetNouns, synsetNounOffsets[id], synsetNounOffsets[id + 1]);
+        synsetsCount = id + 1;
+        return id;
+    }
+
+    String synset(int id) {
+        return synsets[id];
+    }
+
+    // synset ids of the noun in synsets file order, null if it is not a noun; must not be modified
+    int[] synsetIds(String noun) {
+        final int index = indexOf(noun);
+        return index == -1 ? null : postings[index];
+    }
+
+    // index of the first noun of synset id in nounAt order
+    int firstNoun(int id) {
+        return synsetNounOffsets[id];
+    }
+
+    // index after the last noun of synset id
+    int lastNoun(int id) {
+        return synsetNounOffsets[id + 1];
+    }
+
+    // noun index (see noun) at the given position, between firstNoun and lastNoun of a synset
+    int nounAt(int position) {
+        return synsetNouns[position];
+    }
+
+    boolean contains(String noun) {
+        return indexOf(noun) != -1;
+    }
+
+    // Nouns in index order; strings are created while iterating
+    Iterable<String> nouns() {
+        return () -> new Iterator<String>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < nounsCount;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return noun(next++);
+            }
+        };
+    }
+
+    String noun(int index) {
+        return new String(nounChars, nounOffsets[index], nounOffsets[index + 1] - nounOffsets[index]);
+    }
+
+    int indexOf(String noun) {
+        final int mask = slots.length - 1;
+        for (int slot = spread(noun.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            final int index = slots[slot] - 1;
+            if (nounEquals(index, noun)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    // Layout, big-endian: synsets count, (UTF-8 length, bytes)*, nouns count, chars count,
+    // noun offsets, chars, (ids count, ids*)*
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(synsetsCount);
+        for (int id = 0; id < synsetsCount; ++id) {
+            byte[] bytes = synsets[id].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeInt(nounsCount);
+        out.writeInt(nounOffsets[nounsCount]);
+        for (int i = 0; i <= nounsCount; ++i) {
+            out.writeInt(nounOffsets[i]);
+        }
+        for (int i = 0; i < nounOffsets[nounsCount]; ++i) {
+            out.writeChar(nounChars[i]);
+        }
+        for (int i = 0; i < nounsCount; ++i) {
+            out.writeInt(postings[i].length);
+            for (int id : postings[i]) {
+                out.writeInt(id);
+            }
+        }
+    }
+
+    static NounDictionary readFrom(ByteBuffer buffer) {
+        final String[] synsets = new String[buffer.getInt()];
+        for (int i = 0; i < synsets.length; ++i) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            synsets[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        final int nounsCount = buffer.getInt();
+        final char[] nounChars = new char[buffer.getInt()];
+        final int[] nounOffsets = new int[nounsCount + 1];
+        buffer.asIntBuffer().get(nounOffsets);
+        buffer.position(buffer.position() + nounOffsets.length * Integer.BYTES);
+        buffer.asCharBuffer().get(nounChars);
+        buffer.position(buffer.position() + nounChars.length * Character.BYTES);
+
+        final int[][] postings = new int[nounsCount][];
+        for (int i = 0; i < nounsCount; ++i) {
+            postings[i] = new int[buffer.getInt()];
+            buffer.asIntBuffer().get(postings[i]);
+            buffer.position(buffer.position() + postings[i].length * Integer.BYTES);
+        }
+
+        return new NounDictionary(synsets, nounChars, nounOffsets, postings);
+    }
+
+    // appends a noun without synset ids, returns its index
+    private int addNoun(String noun) {
+        final int index = nounsCount;
+        if (index == postings.length) {
+            postings = Arrays.copyOf(postings, Math.max(index * 2, 16));
+            nounOffsets = Arrays.copyOf(nounOffsets, postings.length + 1);
+        }
+
+        final int start = nounOffsets[index];
+        if (start + noun.length() > nounChars.length) {
+            nounChars = Arrays.copyOf(nounChars, Math.max(start + noun.length(), nounChars.length * 2));
+        }
+        noun.getChars(0, noun.length(), nounChars, start);
+        nounOffsets[index + 1] = start + noun.length();
+        postings[index] = new int[0];
+        nounsCount = index + 1;
+
+        // keep the load factor at most 1/2
+        if (nounsCount * 2 > slots.length) {
+            slots = buildSlots(slots.length * 2);
+        }
+        else {
+            final int mask = slots.length - 1;
+            int slot = spread(noun.hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+        return index;
+    }
+
+    private int[] buildSlots(int capacity) {
+        final int[] table = new int[capacity];
+        final int mask = capacity - 1;
+
+        for (int index = 0; index < nounsCount; ++index) {
+            int slot = spread(nounHash(index)) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index + 1;
+        }
+        return table;
+    }
+
+    // same value as String.hashCode of the noun
+    private int nounHash(int index) {
+        int h = 0;
+        for (int i = nounOffsets[index]; i < nounOffsets[index + 1]; ++i) {
+            h = 31 * h + nounChars[i];
+        }
+        return h;
+    }
+
+    private boolean nounEquals(int index, String noun) {
+        final int start = nounOffsets[index];
+        final int length = nounOffsets[index + 1] - start;
+        if (length != noun.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < length; ++i) {
+            if (nounChars[start + i] != noun.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
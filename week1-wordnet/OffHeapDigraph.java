@@ -0,0 +1,72 @@
+// Digraph in compressed sparse row form kept outside of the heap, for taxonomies whose arrays
+// would not fit into it: targets of v are targets[offsets[v]] .. targets[offsets[v + 1] - 1].
+// Either copied into direct memory or mapped straight from the graph section of a WordNet
+// snapshot, in which case pages are loaded by the OS as queries touch them. Read-only.
+public class OffHeapDigraph implements IndexedDigraph {
+    private final IntStore offsets;
+    private final IntStore targets;
+    private final int vertexCount;
+    private final int edgesCount;
+
+    OffHeapDigraph(IntStore offsets, IntStore targets) {
+        if (offsets.length() < 1 || offsets.length() - 1 > Integer.MAX_VALUE
+                || targets.length() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Graph has more than " + Integer.MAX_VALUE + " vertexes or edges");
+        }
+
+        this.offsets = offsets;
+        this.targets = targets;
+        vertexCount = (int) (offsets.length() - 1);
+        edgesCount = (int) targets.length();
+    }
+
+    // copy of the given graph in direct memory
+    public static OffHeapDigraph copyOf(IndexedDigraph graph) {
+        final IntStore offsets = IntStore.direct(graph.V() + 1L);
+        final IntStore targets = IntStore.direct(graph.E());
+        int edge = 0;
+        for (int v = 0; v < graph.V(); ++v) {
+            offsets.set(v, edge);
+            for (int e = graph.firstEdge(v), end = graph.lastEdge(v); e < end; ++e) {
+                targets.set(edge++, graph.target(e));
+            }
+        }
+        offsets.set(graph.V(), edge);
+        return new OffHeapDigraph(offsets, targets);
+    }
+
+    // hypernyms graph of a snapshot written by WordNet.saveSnapshot, mapped into memory
+    public static OffHeapDigraph map(String snapshotFileName) {
+        return WordNetSnapshot.mapGraph(snapshotFileName);
+    }
+
+    @Override
+    public int firstEdge(int v) {
+        return offsets.get(v);
+    }
+
+    @Override
+    public int lastEdge(int v) {
+        return offsets.get(v + 1L);
+    }
+
+    @Override
+    public int target(int edge) {
+        return targets.get(edge);
+    }
+
+    @Override
+    public int outdegree(int v) {
+        return lastEdge(v) - firstEdge(v);
+    }
+
+    @Override
+    public int V() {
+        return vertexCount;
+    }
+
+    @Override
+    public int E() {
+        return edgesCount;
+    }
+}
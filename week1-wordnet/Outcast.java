@@ -1,7 +1,12 @@
 import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdOut;
 
+import java.util.stream.IntStream;
+
 public class Outcast {
+    // below this many nouns the rows are computed on the calling thread
+    private static final int PARALLEL_THRESHOLD = 32;
+
     private final WordNet net;
 
     // constructor takes a WordNet object
@@ -19,28 +24,49 @@ public class Outcast {
             throw new IllegalArgumentException("At least 2 nouns must be provided for outcast");
         }
 
-        int maxDistance = Integer.MIN_VALUE;
-        String outcast = null;
+        final int n = nouns.length;
+
+        // One full upward traversal per noun; a pairwise distance is then a merge of two
+        // ancestor lists
+        final long[][] ancestors = new long[n][];
+        rows(n).forEach(i -> ancestors[i] = net.ancestors(nouns[i]));
+
+        // distances[i][j - i - 1] is the distance between nouns i and j > i
+        final int[][] distances = new int[n][];
+        rows(n).forEach(i -> {
+            int[] row = new int[n - i - 1];
+            for (int j = i + 1; j < n; ++j) {
+                row[j - i - 1] = WordNet.distance(ancestors[i], ancestors[j]);
+            }
+            distances[i] = row;
+        });
 
-        for (int i = 0; i < nouns.length; ++i) {
-            int distance = 0;
-            String first = nouns[i];
-            for (int j = 0; j < nouns.length; ++j) {
-                if (i != j) {
-                    int d = net.distance(first, nouns[j]);
-                    distance += d;
-                }
+        final long[] totals = new long[n];
+        for (int i = 0; i < n; ++i) {
+            for (int j = i + 1; j < n; ++j) {
+                final int d = distances[i][j - i - 1];
+                totals[i] += d;
+                totals[j] += d;
             }
+        }
 
-            if (distance > maxDistance) {
-                maxDistance = distance;
-                outcast = first;
+        long maxDistance = Long.MIN_VALUE;
+        String outcast = null;
+
+        for (int i = 0; i < n; ++i) {
+            if (totals[i] > maxDistance) {
+                maxDistance = totals[i];
+                outcast = nouns[i];
             }
         }
 
         return outcast;
     }
 
+    private static IntStream rows(int n) {
+        IntStream rows = IntStream.range(0, n);
+        return n < PARALLEL_THRESHOLD ? rows : rows.parallel();
+    }
 
     // see test client below
     public static void main(String[] args) {
@@ -0,0 +1,102 @@
+// Read-only digraph in compressed sparse row form with every offset and every target bit-packed
+// into just as many bits as the largest one needs, e.g. 17 instead of 32 for a graph of 100000
+// vertexes. Edges keep their indexes, so searches read targets in place, one shift and mask per
+// edge, and the graph takes several times less memory (and cache) than an ArrayDigraph.
+public class PackedDigraph implements IndexedDigraph {
+    private final int vertexCount;
+    private final int edgesCount;
+
+    private final long[] offsets;
+    private final int offsetBits;
+    private final long[] targets;
+    private final int targetBits;
+
+    private PackedDigraph(IndexedDigraph graph) {
+        vertexCount = graph.V();
+        edgesCount = graph.E();
+        offsetBits = bitsFor(edgesCount);
+        targetBits = bitsFor(Math.max(vertexCount - 1, 0));
+        offsets = new long[wordsFor(vertexCount + 1L, offsetBits)];
+        targets = new long[wordsFor(edgesCount, targetBits)];
+
+        int edge = 0;
+        for (int v = 0; v < vertexCount; ++v) {
+            set(offsets, offsetBits, v, edge);
+            for (int e = graph.firstEdge(v), end = graph.lastEdge(v); e < end; ++e) {
+                set(targets, targetBits, edge++, graph.target(e));
+            }
+        }
+        set(offsets, offsetBits, vertexCount, edge);
+    }
+
+    // packed copy of the given graph, edges in the same order
+    public static PackedDigraph copyOf(IndexedDigraph graph) {
+        if (graph == null) {
+            throw new IllegalArgumentException("Graph is null");
+        }
+        return new PackedDigraph(graph);
+    }
+
+    @Override
+    public int firstEdge(int v) {
+        return get(offsets, offsetBits, v);
+    }
+
+    @Override
+    public int lastEdge(int v) {
+        return get(offsets, offsetBits, v + 1);
+    }
+
+    @Override
+    public int target(int edge) {
+        return get(targets, targetBits, edge);
+    }
+
+    @Override
+    public int outdegree(int v) {
+        return lastEdge(v) - firstEdge(v);
+    }
+
+    @Override
+    public int V() {
+        return vertexCount;
+    }
+
+    @Override
+    public int E() {
+        return edgesCount;
+    }
+
+    // memory taken by the packed arrays
+    public long sizeInBytes() {
+        return (long) (offsets.length + targets.length) * Long.BYTES;
+    }
+
+    // The i-th value starts at bit i * bits and may continue into the next word; the extra word at
+    // the end of every array lets both words be read without a branch. The second shift is split
+    // in two since Java shifts a long by 64 as by 0.
+    private static int get(long[] words, int bits, int i) {
+        final long position = (long) i * bits;
+        final int word = (int) (position >>> 6);
+        final int shift = (int) position & 63;
+        final long value = (words[word] >>> shift) | (words[word + 1] << 1 << (63 - shift));
+        return (int) value & ((1 << bits) - 1);
+    }
+
+    private static void set(long[] words, int bits, int i, int value) {
+        final long position = (long) i * bits;
+        final int word = (int) (position >>> 6);
+        final int shift = (int) position & 63;
+        words[word] |= (long) value << shift;
+        words[word + 1] |= (long) value >>> 1 >>> (63 - shift);
+    }
+
+    // bits needed for values 0 .. maxValue, at least one
+    private static int bitsFor(int maxValue) {
+        return Math.max(32 - Integer.numberOfLeadingZeros(maxValue), 1);
+    }
+
+    private static int wordsFor(long count, int bits) {
+        return (int) ((count * bits + 63) >>> 6) + 1;
+    }
+}
@@ -3,121 +3,440 @@ import edu.princeton.cs.algs4.In;
 import edu.princeton.cs.algs4.StdIn;
 import edu.princeton.cs.algs4.StdOut;
 
-public class SAP {
-    private final FastBFS vBfs;
-    private final FastBFS wBfs;
-    private final ArrayDigraph graph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
-    private int shortestPath;
-    private int ancestor;
+public class SAP {
+    static final int DEFAULT_CACHE_CAPACITY = 8192;
 
-    private class CacheValue<T> {
-        public T w;
-        public T v;
-        public int ancestor = -1;
-        public int shortestPath = Integer.MAX_VALUE;
+    // maxDistance of queries without a bound
+    static final int UNBOUNDED = Integer.MAX_VALUE;
 
-        public boolean inCache(T v, T w) {
-            return this.v != null && ((v.equals(this.v) && w.equals(this.w))
-                    || (w.equals(this.v) && v.equals(this.w)));
-        }
+    public enum SearchMode {
+        // two BFS advanced one vertex at a time in turns
+        LOCKSTEP,
+        // whole levels, smaller frontier first, bottom-up for large frontiers
+        FRONTIER_BALANCED
     }
 
-    private final CacheValue<Integer> valueCache = new CacheValue<>();
-    private final CacheValue<Iterable<Integer>> iterablesCache = new CacheValue<>();
+    private final IndexedDigraph graph;
+    // The same graph if it is an ArrayDigraph, null for off-heap and packed graphs. Those are only
+    // searched by the lockstep BFS: the distance index, the frontier-balanced search and the
+    // bit-parallel matrix BFS keep per-vertex state on the heap and read ArrayDigraph directly,
+    // and updates need a mutable graph.
+    private final ArrayDigraph heapGraph;
+
+    // Search workspace of each thread. Every query borrows it for its duration, so the graph is
+    // shared between threads while the BFS state is never touched by two queries at once.
+    private final ThreadLocal<SAPSearch> searches;
+
+    // LRU cache of query results; null when caching is disabled
+    private final SAPCache cache;
+
+    // ancestor labels answering queries without BFS; null until built
+    private volatile DistanceIndex index;
+
+    // Reversed graph for the frontier-balanced search and WordNet neighborhood queries; created
+    // on first use and then kept up to date by the updates, even in the lockstep mode
+    private volatile ArrayDigraph hyponyms;
+    private volatile boolean frontierBalanced;
+    private final LongAdder expandedVertexes = new LongAdder();
+
+    // Observers of queries; with both null queries aren't even timed
+    private volatile SAPMetrics metrics;
+    private volatile SAPQueryListener listener;
 
     // constructor takes a digraph (not necessarily a DAG)
     public SAP(Digraph g) {
-        graph = new ArrayDigraph(g);
-        vBfs = new FastBFS(graph);
-        wBfs = new FastBFS(graph);
+        this(g, DEFAULT_CACHE_CAPACITY);
+    }
+
+    // cacheCapacity is the maximum number of cached query results; 0 disables caching
+    public SAP(Digraph g, int cacheCapacity) {
+        this(new ArrayDigraph(g), cacheCapacity);
+    }
+
+    // Searches the given graph in place, e.g. a PackedDigraph, or an OffHeapDigraph, in which case
+    // the BFS state is kept off the heap as well
+    public SAP(IndexedDigraph g, int cacheCapacity) {
+        if (g == null) {
+            throw new IllegalArgumentException("Graph is null");
+        }
+        if (cacheCapacity < 0) {
+            throw new IllegalArgumentException("Cache capacity can't be negative");
+        }
+
+        graph = g;
+        heapGraph = g instanceof ArrayDigraph ? (ArrayDigraph) g : null;
+        cache = cacheCapacity > 0 ? new SAPCache(cacheCapacity) : null;
+        searches = ThreadLocal.withInitial(() -> new SAPSearch(graph));
     }
 
     // length of shortest ancestral path between v and w; -1 if no such path
     public int length(int v, int w) {
-        calculateShortestPath(v, w);
-        return shortestPath;
+        return SAPSearch.lengthOf(calculateShortestPath(v, w, UNBOUNDED));
     }
 
     // a common ancestor of v and w that participates in a shortest ancestral path; -1 if no such path
     public int ancestor(int v, int w) {
-        calculateShortestPath(v, w);
-        return ancestor;
+        return SAPSearch.ancestorOf(calculateShortestPath(v, w, UNBOUNDED));
     }
 
     // length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
     public int length(Iterable<Integer> v, Iterable<Integer> w) {
-        calculateShortestPath(v, w);
-        return shortestPath;
+        return SAPSearch.lengthOf(calculateShortestPath(v, w, UNBOUNDED));
     }
 
     // a common ancestor that participates in shortest ancestral path; -1 if no such path
     public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
-        calculateShortestPath(v, w);
-        return ancestor;
+        return SAPSearch.ancestorOf(calculateShortestPath(v, w, UNBOUNDED));
+    }
+
+    // Same as length(Iterable, Iterable) without boxing; the arrays are not modified or kept
+    public int length(int[] v, int[] w) {
+        return SAPSearch.lengthOf(calculateShortestPath(v, w, UNBOUNDED));
+    }
+
+    // Same as ancestor(Iterable, Iterable) without boxing; the arrays are not modified or kept
+    public int ancestor(int[] v, int[] w) {
+        return SAPSearch.ancestorOf(calculateShortestPath(v, w, UNBOUNDED));
+    }
+
+    // length of shortest ancestral path between v and w if it is at most maxDistance; -1 otherwise.
+    // The search stops as soon as it can only find longer paths.
+    public int lengthWithin(int v, int w, int maxDistance) {
+        checkMaxDistance(maxDistance);
+        return SAPSearch.lengthOf(calculateShortestPath(v, w, maxDistance));
+    }
+
+    public int lengthWithin(Iterable<Integer> v, Iterable<Integer> w, int maxDistance) {
+        checkMaxDistance(maxDistance);
+        return SAPSearch.lengthOf(calculateShortestPath(v, w, maxDistance));
+    }
+
+    public int lengthWithin(int[] v, int[] w, int maxDistance) {
+        checkMaxDistance(maxDistance);
+        return SAPSearch.lengthOf(calculateShortestPath(v, w, maxDistance));
+    }
+
+    // Precomputes ancestor labels so that queries merge two label lists instead of running BFS.
+    // Returns false and keeps using BFS if the labels need more than maxLabelEntries entries or
+    // the graph is not an ArrayDigraph.
+    public boolean buildDistanceIndex(long maxLabelEntries) {
+        if (maxLabelEntries < 0) {
+            throw new IllegalArgumentException("Label entries limit can't be negative");
+        }
+        if (heapGraph == null) {
+            return false;
+        }
+
+        DistanceIndex built = DistanceIndex.build(heapGraph, Math.min(maxLabelEntries, Integer.MAX_VALUE - 8));
+        if (built == null) {
+            return false;
+        }
+
+        index = built;
+        return true;
+    }
+
+    // Matrix of shortest ancestral path lengths between all pairs of vertex sets, -1 where there
+    // is no such path. Up to 64 sets are handled by a single bit-parallel traversal; for graphs other
+    // than ArrayDigraph every pair is a separate query.
+    public int[][] lengths(List<? extends Iterable<Integer>> sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources are null");
+        }
+
+        int[][] vertexes = new int[sources.size()][];
+        for (int i = 0; i < vertexes.length; ++i) {
+            Iterable<Integer> source = sources.get(i);
+            checkSource(source);
+
+            int count = 0;
+            for (int ignored : source) {
+                ++count;
+            }
+            vertexes[i] = new int[count];
+            count = 0;
+            for (int v : source) {
+                vertexes[i][count++] = v;
+            }
+        }
+
+        return lengths(vertexes);
+    }
+
+    // Selects the BFS used when there is no distance index; graphs other than ArrayDigraph stay in
+    // the lockstep mode
+    public void setSearchMode(SearchMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Search mode is null");
+        }
+
+        if (mode == SearchMode.FRONTIER_BALANCED && hyponyms() != null) {
+            frontierBalanced = true;
+        }
+        else {
+            frontierBalanced = false;
+        }
+    }
+
+    public SearchMode searchMode() {
+        return frontierBalanced ? SearchMode.FRONTIER_BALANCED : SearchMode.LOCKSTEP;
+    }
+
+    // total number of vertexes expanded by searches, cache hits and indexed queries expand none
+    public long expandedVertices() {
+        return expandedVertexes.sum();
+    }
+
+    // number of entries in the distance index labels; 0 if there is no index
+    public long distanceIndexSize() {
+        DistanceIndex current = index;
+        return current != null ? current.size() : 0;
+    }
+
+    // Calls the listener after every length/ancestor query with what the query did; null removes
+    // it. Queries are only timed while there is a listener or metrics are enabled.
+    public void setQueryListener(SAPQueryListener listener) {
+        this.listener = listener;
+    }
+
+    // Starts collecting aggregate metrics of queries, if not yet, and returns them. With a non-null
+    // jmxName they are also registered as an MBean under that object name,
+    // e.g. "WordNet:type=SAPMetrics,name=main".
+    public synchronized SAPMetricsMBean enableMetrics(String jmxName) {
+        if (metrics == null) {
+            SAPMetrics created = new SAPMetrics();
+            if (jmxName != null) {
+                created.register(jmxName);
+            }
+            metrics = created;
+        }
+        else if (jmxName != null) {
+            metrics.register(jmxName);
+        }
+        return metrics;
+    }
+
+    // aggregate metrics of queries; null unless enabled
+    public SAPMetricsMBean metrics() {
+        return metrics;
     }
 
-    private void calculateShortestPath(int v, int w) {
+    // number of queries answered from the cache
+    public long cacheHits() {
+        return cache != null ? cache.hits() : 0;
+    }
+
+    // number of queries that had to be computed although caching is enabled
+    public long cacheMisses() {
+        return cache != null ? cache.misses() : 0;
+    }
+
+    // number of results dropped from the cache to stay within its capacity
+    public long cacheEvictions() {
+        return cache != null ? cache.evictions() : 0;
+    }
+
+    private long calculateShortestPath(int v, int w, int maxDistance) {
+        checkSource(v);
+        checkSource(w);
+
+        SAPSearch search = acquireSearch();
+        try {
+            search.setSources(v, w);
+            return calculateShortestPath(search, maxDistance);
+        }
+        finally {
+            releaseSearch(search);
+        }
+    }
+
+    private long calculateShortestPath(int[] v, int[] w, int maxDistance) {
         checkSource(v);
         checkSource(w);
-        if (!inCache(v, w)) {
-            vBfs.startBfsInLockstep(v);
-            wBfs.startBfsInLockstep(w);
-            calculateShortestPath();
-            updateCache(v, w);
+
+        SAPSearch search = acquireSearch();
+        try {
+            search.setSources(v, w);
+            return calculateShortestPath(search, maxDistance);
+        }
+        finally {
+            releaseSearch(search);
         }
     }
 
-    private void calculateShortestPath(Iterable<Integer> v, Iterable<Integer> w) {
+    private long calculateShortestPath(Iterable<Integer> v, Iterable<Integer> w, int maxDistance) {
         checkSource(v);
         checkSource(w);
-        if (!inCache(v, w)) {
-            vBfs.startBfsInLockstep(v);
-            wBfs.startBfsInLockstep(w);
-            calculateShortestPath();
-            updateCache(v, w);
+
+        SAPSearch search = acquireSearch();
+        try {
+            search.setSources(v, w);
+            return calculateShortestPath(search, maxDistance);
         }
+        finally {
+            releaseSearch(search);
+        }
+    }
+
+    // Answers the query for the sources already set on the search, through the cache if enabled.
+    // A bounded query that finds no path doesn't know the real length, so it isn't cached.
+    private long calculateShortestPath(SAPSearch search, int maxDistance) {
+        final boolean observed = metrics != null || listener != null;
+        final long start = observed ? System.nanoTime() : 0;
+
+        SAPCache.Probe probe = null;
+        if (cache != null) {
+            probe = search.cacheProbe();
+            long cached = cache.get(probe);
+            if (cached != SAPCache.MISS) {
+                long result = SAPSearch.within(cached, maxDistance);
+                if (observed) {
+                    queryCompleted(search.queryMetrics(true, result, System.nanoTime() - start));
+                }
+                return result;
+            }
+        }
+
+        long result = search.find(index, frontierBalanced ? hyponyms : null, maxDistance, observed);
+        expandedVertexes.add(search.expandedVertexes());
+        if (observed) {
+            queryCompleted(search.queryMetrics(false, result, System.nanoTime() - start));
+        }
+
+        if (probe != null && (maxDistance == UNBOUNDED || SAPSearch.lengthOf(result) != -1)) {
+            cache.put(probe, result);
+        }
+        return result;
     }
 
-    private void calculateShortestPath() {
-        shortestPath = Integer.MAX_VALUE;
-        ancestor = -1;
+    private void queryCompleted(SAPQueryMetrics query) {
+        SAPMetrics aggregate = metrics;
+        if (aggregate != null) {
+            aggregate.record(query);
+        }
+
+        SAPQueryListener current = listener;
+        if (current != null) {
+            current.queryCompleted(query);
+        }
+    }
 
-        int lastV = -1;
-        int lastW = -1;
+    // The reversed graph, null if the graph is not an ArrayDigraph. Synchronized so that racing
+    // calls create a single copy, the one the updates keep up to date; like the queries it must
+    // not overlap with updates.
+    synchronized ArrayDigraph hyponyms() {
+        if (hyponyms == null && heapGraph != null) {
+            hyponyms = heapGraph.reverse();
+        }
+        return hyponyms;
+    }
 
-        do {
-            lastV = makeStep(vBfs, wBfs);
-            lastW = makeStep(wBfs, vBfs);
+    // Adds a vertex to the graph and returns it; like addEdge it must not overlap with queries
+    int addVertex() {
+        int v = heapGraph.addVertex();
+        if (hyponyms != null) {
+            hyponyms.addVertex();
+        }
+        // results stay valid, but the index has no labels for v; workspaces grow on their next query
+        index = null;
+        return v;
+    }
 
-            lastV = tryTerminate(vBfs, lastV);
-            lastW = tryTerminate(wBfs, lastW);
-        } while (lastV != -1 || lastW != -1);
+    // Adds the edge v -> w to the graph, the distance index is dropped and the cache cleared
+    void addEdge(int v, int w) {
+        heapGraph.addEdge(v, w);
+        if (hyponyms != null) {
+            hyponyms.addEdge(w, v);
+        }
 
-        if (ancestor == -1) {
-            shortestPath = -1;
+        index = null;
+        if (cache != null) {
+            cache.clear();
         }
     }
 
-    private int makeStep(FastBFS firstBfs, FastBFS secondBfs) {
-        int lastVertex = firstBfs.makeStep();
-        if (lastVertex != -1 && secondBfs.hasPathTo(lastVertex)) {
-            int shortestCandidate = firstBfs.distanceTo(lastVertex)
-                    + secondBfs.distanceTo(lastVertex);
-            if (shortestCandidate < shortestPath) {
-                ancestor = lastVertex;
-                shortestPath = shortestCandidate;
+    // Same as lengths(List) for already validated vertex sets
+    int[][] lengths(int[][] sources) {
+        final int n = sources.length;
+        final int[][] result = new int[n][n];
+        if (heapGraph == null) {
+            for (int i = 0; i < n; ++i) {
+                for (int j = i; j < n; ++j) {
+                    result[i][j] = SAPSearch.lengthOf(calculateShortestPath(sources[i], sources[j], UNBOUNDED));
+                    result[j][i] = result[i][j];
+                }
+            }
+            return result;
+        }
+
+        // With more than 64 sets every run takes two blocks of 32; runs sharing a block write
+        // the same values into its part of the matrix
+        final List<int[]> runs = new ArrayList<>();
+        if (n <= MultiSourceBFS.MAX_SOURCES) {
+            runs.add(IntStream.range(0, n).toArray());
+        }
+        else {
+            final int blockSize = MultiSourceBFS.MAX_SOURCES / 2;
+            for (int first = 0; first < n; first += blockSize) {
+                for (int second = first + blockSize; second < n; second += blockSize) {
+                    runs.add(IntStream.concat(IntStream.range(first, first + blockSize),
+                                              IntStream.range(second, Math.min(second + blockSize, n)))
+                                     .toArray());
+                }
+            }
+        }
+
+        Stream<int[]> stream = runs.size() > 1 ? runs.parallelStream() : runs.stream();
+        stream.forEach(run -> {
+            SAPSearch search = acquireSearch();
+            try {
+                search.lengths(sources, run, result);
             }
+            finally {
+                releaseSearch(search);
+            }
+        });
+
+        return result;
+    }
+
+    // All ancestors of the sources with their distances, see SAPSearch.ancestors
+    long[] ancestors(int[] sources) {
+        checkSource(sources);
+
+        SAPSearch search = acquireSearch();
+        try {
+            return search.ancestors(sources);
+        }
+        finally {
+            releaseSearch(search);
         }
-        return lastVertex;
     }
 
-    private int tryTerminate(FastBFS v, int lastVertex) {
-        if (v.getCurrentDistance() > shortestPath) {
-            v.terminate();
-            return -1;
+    // The thread's workspace, or a new one for a query made while it is borrowed, e.g. from a
+    // query listener
+    private SAPSearch acquireSearch() {
+        SAPSearch search = searches.get();
+        if (search.borrowed) {
+            search = new SAPSearch(graph);
+        }
+        search.borrowed = true;
+        return search;
+    }
+
+    // A workspace left half-updated by an exception is dropped; the thread gets a new one on
+    // its next query
+    private void releaseSearch(SAPSearch search) {
+        search.borrowed = false;
+        if (search.broken() && search == searches.get()) {
+            searches.remove();
         }
-        return lastVertex;
     }
 
     private void checkSource(Iterable<Integer> sources) {
@@ -133,42 +452,26 @@ public class SAP {
         }
     }
 
-    private void checkSource(int s) {
-        if (s < 0 || s >= graph.V()) {
-            throw new IllegalArgumentException("Source vertex " + s + " is out of range");
+    private void checkSource(int[] sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources are null");
         }
-    }
 
-    private boolean inCache(Iterable<Integer> v, Iterable<Integer> w) {
-        if (iterablesCache.inCache(v, w)) {
-            ancestor = iterablesCache.ancestor;
-            shortestPath = iterablesCache.shortestPath;
-            return true;
+        for (int s : sources) {
+            checkSource(s);
         }
-        return false;
-    }
-
-    private void updateCache(Iterable<Integer> v, Iterable<Integer> w) {
-        iterablesCache.v = v;
-        iterablesCache.w = w;
-        iterablesCache.ancestor = ancestor;
-        iterablesCache.shortestPath = shortestPath;
     }
 
-    private boolean inCache(int v, int w) {
-        if (valueCache.inCache(v, w)) {
-            ancestor = valueCache.ancestor;
-            shortestPath = valueCache.shortestPath;
-            return true;
+    private void checkMaxDistance(int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("Max distance can't be negative");
         }
-        return false;
     }
 
-    private void updateCache(int v, int w) {
-        valueCache.v = v;
-        valueCache.w = w;
-        valueCache.ancestor = ancestor;
-        valueCache.shortestPath = shortestPath;
+    private void checkSource(int s) {
+        if (s < 0 || s >= graph.V()) {
+            throw new IllegalArgumentException("Source vertex " + s + " is out of range");
+        }
     }
 
     // do unit testing of this class
@@ -0,0 +1,231 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Size-bounded LRU cache of SAP results. Keys are pairs of vertex sets which are compared by
+// content and regardless of order, so {1, 2} x {3} and {3} x {2, 1, 2} share one entry.
+// The cache is split into independently locked segments to keep contention low. Lookups go
+// through a reusable Probe, so a hit allocates nothing; a Key is only created on put.
+class SAPCache {
+    static final long MISS = Long.MIN_VALUE;
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    SAPCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+
+        int segmentsCount = 1;
+        while (segmentsCount < MAX_SEGMENTS && capacity / (segmentsCount * 2) >= MIN_SEGMENT_CAPACITY) {
+            segmentsCount *= 2;
+        }
+
+        segments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; ++i) {
+            int segmentCapacity = capacity / segmentsCount + (i < capacity % segmentsCount ? 1 : 0);
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    // packed SAPSearch result or MISS
+    long get(Probe probe) {
+        Segment segment = segmentFor(probe.hash);
+        Long result;
+        synchronized (segment) {
+            // HashMap compares the probe against stored keys with probe.equals(key)
+            result = segment.get(probe);
+        }
+
+        if (result == null) {
+            misses.increment();
+            return MISS;
+        }
+
+        hits.increment();
+        return result;
+    }
+
+    void put(Probe probe, long result) {
+        Key key = probe.toKey();
+        Segment segment = segmentFor(key.hash);
+        synchronized (segment) {
+            segment.put(key, result);
+        }
+    }
+
+    // drops all entries, e.g. after the graph has changed
+    void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(int hash) {
+        int h = hash ^ (hash >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    private final class Segment extends LinkedHashMap<Key, Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // Pair of sorted vertex sets without duplicates; the smaller set always goes first
+    static final class Key {
+        private final int[] first;
+        private final int[] second;
+        private final int hash;
+
+        private Key(int[] first, int[] second, int hash) {
+            this.first = first;
+            this.second = second;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return hash == other.hash
+                    && Arrays.equals(first, other.first)
+                    && Arrays.equals(second, other.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // Mutable lookup key normalized the same way as Key into reusable buffers. A probe equals
+    // the Key with the same sets, so it can be passed to get without creating a Key.
+    static final class Probe {
+        private int[] a = new int[16];
+        private int aCount;
+        private int[] b = new int[16];
+        private int bCount;
+
+        // after set: first set is (a, aCount) if firstIsA, (b, bCount) otherwise
+        private boolean firstIsA;
+        private int hash;
+
+        void set(int[] v, int vCount, int[] w, int wCount) {
+            a = normalize(v, vCount, a);
+            aCount = unique(a, vCount);
+            b = normalize(w, wCount, b);
+            bCount = unique(b, wCount);
+
+            firstIsA = compare(a, aCount, b, bCount) <= 0;
+            hash = firstIsA ? 31 * hash(a, aCount) + hash(b, bCount)
+                            : 31 * hash(b, bCount) + hash(a, aCount);
+        }
+
+        Key toKey() {
+            int[] aCopy = Arrays.copyOf(a, aCount);
+            int[] bCopy = Arrays.copyOf(b, bCount);
+            return firstIsA ? new Key(aCopy, bCopy, hash) : new Key(bCopy, aCopy, hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            if (key.hash != hash) {
+                return false;
+            }
+            return firstIsA
+                    ? Arrays.equals(a, 0, aCount, key.first, 0, key.first.length)
+                            && Arrays.equals(b, 0, bCount, key.second, 0, key.second.length)
+                    : Arrays.equals(b, 0, bCount, key.first, 0, key.first.length)
+                            && Arrays.equals(a, 0, aCount, key.second, 0, key.second.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static int[] normalize(int[] vertexes, int count, int[] buffer) {
+            if (buffer.length < count) {
+                buffer = new int[Math.max(count, buffer.length * 2)];
+            }
+            System.arraycopy(vertexes, 0, buffer, 0, count);
+            Arrays.sort(buffer, 0, count);
+            return buffer;
+        }
+
+        // removes duplicates from sorted values[0 .. count - 1], returns the new count
+        private static int unique(int[] values, int count) {
+            int unique = 0;
+            for (int i = 0; i < count; ++i) {
+                if (unique == 0 || values[unique - 1] != values[i]) {
+                    values[unique++] = values[i];
+                }
+            }
+            return unique;
+        }
+
+        private static int compare(int[] a, int aCount, int[] b, int bCount) {
+            if (aCount != bCount) {
+                return Integer.compare(aCount, bCount);
+            }
+            return Arrays.compare(a, 0, aCount, b, 0, bCount);
+        }
+
+        // same value as Arrays.hashCode of values[0 .. count - 1]
+        private static int hash(int[] values, int count) {
+            int h = 1;
+            for (int i = 0; i < count; ++i) {
+                h = 31 * h + values[i];
+            }
+            return h;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Aggregate metrics of SAP queries: counters and a latency histogram with one bucket per power
+// of two nanoseconds. All counters are LongAdders, so recording from many query threads doesn't
+// contend; reading sums them up.
+public class SAPMetrics implements SAPMetricsMBean {
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder indexedQueries = new LongAdder();
+    private final LongAdder dequeuedVertices = new LongAdder();
+    private final LongAdder scannedEdges = new LongAdder();
+    private final LongAdder earlyTerminations = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    void record(SAPQueryMetrics query) {
+        queries.increment();
+        if (query.strategy() == SAPQueryMetrics.Strategy.CACHE) {
+            cacheHits.increment();
+        }
+        else if (query.strategy() == SAPQueryMetrics.Strategy.INDEX) {
+            indexedQueries.increment();
+        }
+
+        dequeuedVertices.add(query.vDequeued() + query.wDequeued());
+        scannedEdges.add(query.edgesScanned());
+        if (query.terminatedEarly()) {
+            earlyTerminations.increment();
+        }
+        latencies.record(query.latencyNanos());
+    }
+
+    // registers the metrics with the platform MBean server under the given object name
+    void register(String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(objectName));
+        }
+        catch (JMException e) {
+            throw new IllegalArgumentException("Failed to register metrics as " + objectName, e);
+        }
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getIndexedQueries() {
+        return indexedQueries.sum();
+    }
+
+    @Override
+    public long getDequeuedVertices() {
+        return dequeuedVertices.sum();
+    }
+
+    @Override
+    public long getScannedEdges() {
+        return scannedEdges.sum();
+    }
+
+    @Override
+    public long getEarlyTerminations() {
+        return earlyTerminations.sum();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return latencies.percentile(0.5);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return latencies.percentile(0.99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+        return latencies.percentile(0.999);
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        return latencies.counts();
+    }
+
+    @Override
+    public void reset() {
+        queries.reset();
+        cacheHits.reset();
+        indexedQueries.reset();
+        dequeuedVertices.reset();
+        scannedEdges.reset();
+        earlyTerminations.reset();
+        latencies.reset();
+    }
+}
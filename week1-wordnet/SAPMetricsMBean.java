@@ -0,0 +1,25 @@
+// JMX view of SAPMetrics; latencies are upper bounds of power of two buckets
+public interface SAPMetricsMBean {
+    long getQueries();
+
+    long getCacheHits();
+
+    long getIndexedQueries();
+
+    long getDequeuedVertices();
+
+    long getScannedEdges();
+
+    long getEarlyTerminations();
+
+    long getLatencyP50Nanos();
+
+    long getLatencyP99Nanos();
+
+    long getLatencyP999Nanos();
+
+    // queries with latency in [2^(i - 1), 2^i) nanoseconds, bucket 0 is for 0
+    long[] getLatencyHistogram();
+
+    void reset();
+}
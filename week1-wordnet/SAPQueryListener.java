@@ -0,0 +1,6 @@
+// Receives the metrics of every SAP length/ancestor query, see SAP.setQueryListener.
+// Called on the querying thread after the result is known, so implementations should be fast
+// and thread-safe. The metrics object is reused by the next query and must not be kept.
+public interface SAPQueryListener {
+    void queryCompleted(SAPQueryMetrics metrics);
+}
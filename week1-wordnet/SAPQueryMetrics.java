@@ -0,0 +1,75 @@
+// What a single SAP query did. One instance per search workspace is refilled by every query,
+// so observing queries allocates nothing; copy the values out to keep them.
+public class SAPQueryMetrics {
+    public enum Strategy {
+        // answered from the result cache
+        CACHE,
+        // merge of distance index labels
+        INDEX,
+        LOCKSTEP,
+        FRONTIER_BALANCED
+    }
+
+    private Strategy strategy;
+    private int length;
+    private long latencyNanos;
+    private long vDequeued;
+    private long wDequeued;
+    private long edgesScanned;
+    private boolean terminatedEarly;
+
+    void set(Strategy strategy, int length, long latencyNanos, long vDequeued, long wDequeued,
+             long edgesScanned, boolean terminatedEarly) {
+        this.strategy = strategy;
+        this.length = length;
+        this.latencyNanos = latencyNanos;
+        this.vDequeued = vDequeued;
+        this.wDequeued = wDequeued;
+        this.edgesScanned = edgesScanned;
+        this.terminatedEarly = terminatedEarly;
+    }
+
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    public boolean cacheHit() {
+        return strategy == Strategy.CACHE;
+    }
+
+    // length of the result, -1 if there is no path (or none within the bound)
+    public int length() {
+        return length;
+    }
+
+    // from the start of the query until its result was known, cache lookup included
+    public long latencyNanos() {
+        return latencyNanos;
+    }
+
+    // vertexes taken from the queue, or examined bottom-up, by the side of the first sources
+    public long vDequeued() {
+        return vDequeued;
+    }
+
+    public long wDequeued() {
+        return wDequeued;
+    }
+
+    // edges followed by both sides
+    public long edgesScanned() {
+        return edgesScanned;
+    }
+
+    // true if a side stopped with vertexes still queued because they could only give longer paths
+    public boolean terminatedEarly() {
+        return terminatedEarly;
+    }
+
+    @Override
+    public String toString() {
+        return strategy + " length=" + length + " latency=" + latencyNanos + "ns dequeued="
+                + vDequeued + "/" + wDequeued + " edges=" + edgesScanned
+                + (terminatedEarly ? " terminated early" : "");
+    }
+}
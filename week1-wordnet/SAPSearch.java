@@ -0,0 +1,299 @@
+import java.util.Arrays;
+
+// Mutable state of a single shortest ancestral path query. Instances are not thread-safe;
+// SAP hands each one to a single query at a time.
+class SAPSearch {
+    private final IndexedDigraph graph;
+    private final FastBFS vBfs;
+    private final FastBFS wBfs;
+
+    private int shortestPath;
+    private int ancestor;
+
+    // created on the first indexed set query
+    private DistanceIndex.Scratch indexScratch;
+    // created on the first frontier-balanced query; heap graphs only
+    private FrontierSearch frontierSearch;
+    // created on the first distance matrix query; heap graphs only
+    private MultiSourceBFS multiSourceBfs;
+
+    // statistics of the last find
+    private SAPQueryMetrics.Strategy strategy;
+    private int vDequeued;
+    private int wDequeued;
+    private long scannedEdges;
+    private boolean terminatedEarly;
+    private final SAPQueryMetrics queryMetrics = new SAPQueryMetrics();
+
+    private int[] vSources;
+    private int vCount;
+    private int[] wSources;
+    private int wCount;
+    private int[] vBuffer = new int[16];
+    private int[] wBuffer = new int[16];
+    // number of vertexes written by the last copy
+    private int copiedCount;
+    private final SAPCache.Probe probe = new SAPCache.Probe();
+
+    // set by SAP while a query holds this search
+    boolean borrowed;
+    // set while a search runs; still set if it threw, leaving the BFS state half-updated
+    private boolean running;
+
+    SAPSearch(IndexedDigraph g) {
+        graph = g;
+        vBfs = new FastBFS(g);
+        wBfs = new FastBFS(g);
+    }
+
+    // Result of the query packed as (ancestor, length) so it can be returned without allocation
+    static long result(int length, int ancestor) {
+        return ((long) ancestor << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    static int lengthOf(long result) {
+        return (int) result;
+    }
+
+    static int ancestorOf(long result) {
+        return (int) (result >> 32);
+    }
+
+    // result if its length is at most maxDistance, otherwise no path
+    static long within(long result, int maxDistance) {
+        return lengthOf(result) > maxDistance ? result(-1, -1) : result;
+    }
+
+    // Only paths shorter than the limit are looked for: maxDistance + 1, or MAX_VALUE if unbounded
+    static int limitOf(int maxDistance) {
+        return maxDistance == Integer.MAX_VALUE ? Integer.MAX_VALUE : maxDistance + 1;
+    }
+
+    // Sources of the current query. setSources(int[], int[]) keeps the caller's arrays; the other
+    // overloads copy into the reusable buffers, so no variant allocates once the buffers are big
+    // enough.
+    void setSources(int v, int w) {
+        vBuffer[0] = v;
+        wBuffer[0] = w;
+        setSources(vBuffer, 1, wBuffer, 1);
+    }
+
+    void setSources(int[] v, int[] w) {
+        setSources(v, v.length, w, w.length);
+    }
+
+    void setSources(Iterable<Integer> v, Iterable<Integer> w) {
+        vBuffer = copy(v, vBuffer);
+        final int vSize = copiedCount;
+        wBuffer = copy(w, wBuffer);
+        setSources(vBuffer, vSize, wBuffer, copiedCount);
+    }
+
+    // probe for the cache entry of the current sources
+    SAPCache.Probe cacheProbe() {
+        probe.set(vSources, vCount, wSources, wCount);
+        return probe;
+    }
+
+    // Uses the index if there is one, otherwise the frontier-balanced search if hyponyms (the
+    // reversed graph) are given, otherwise the lockstep BFS. Paths longer than maxDistance are
+    // not looked for and the searches stop as soon as they can only find such paths; a path
+    // that is found is still the shortest one. The lockstep BFS counts scanned edges only when
+    // the query is observed.
+    long find(DistanceIndex index, ArrayDigraph hyponyms, int maxDistance, boolean observed) {
+        running = true;
+        long result = search(index, hyponyms, maxDistance, observed);
+        running = false;
+        return result;
+    }
+
+    // Distances between the sets in run, written to result; see MultiSourceBFS.lengths
+    void lengths(int[][] sources, int[] run, int[][] result) {
+        running = true;
+        if (multiSourceBfs == null) {
+            multiSourceBfs = new MultiSourceBFS((ArrayDigraph) graph);
+        }
+        multiSourceBfs.lengths(sources, run, result);
+        running = false;
+    }
+
+    // true if the last search threw and the state can't be reused
+    boolean broken() {
+        return running;
+    }
+
+    // number of vertexes expanded by the last find
+    int expandedVertexes() {
+        return vDequeued + wDequeued;
+    }
+
+    // Metrics of the last find, or of a cache hit if cacheHit is set; the object is reused
+    SAPQueryMetrics queryMetrics(boolean cacheHit, long result, long latencyNanos) {
+        if (cacheHit) {
+            queryMetrics.set(SAPQueryMetrics.Strategy.CACHE, lengthOf(result), latencyNanos, 0, 0, 0, false);
+        }
+        else {
+            queryMetrics.set(strategy, lengthOf(result), latencyNanos, vDequeued, wDequeued,
+                             scannedEdges, terminatedEarly);
+        }
+        return queryMetrics;
+    }
+
+    // All ancestors of the sources (sources included) packed as (vertex, distance), sorted by vertex
+    long[] ancestors(int[] sources) {
+        running = true;
+        vBfs.startBfsInLockstep(sources, sources.length);
+
+        long[] result = new long[16];
+        int count = 0;
+        for (int v = vBfs.makeStep(); v != -1; v = vBfs.makeStep()) {
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = ((long) v << 32) | vBfs.distanceTo(v);
+        }
+
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        running = false;
+        return result;
+    }
+
+    // Length of the shortest ancestral path between two sets given their ancestors; -1 if none
+    static int length(long[] vAncestors, long[] wAncestors) {
+        int shortestPath = Integer.MAX_VALUE;
+
+        int i = 0;
+        int j = 0;
+        while (i < vAncestors.length && j < wAncestors.length) {
+            final int v = (int) (vAncestors[i] >>> 32);
+            final int w = (int) (wAncestors[j] >>> 32);
+            if (v < w) {
+                ++i;
+            }
+            else if (v > w) {
+                ++j;
+            }
+            else {
+                shortestPath = Math.min(shortestPath, (int) vAncestors[i++] + (int) wAncestors[j++]);
+            }
+        }
+
+        return shortestPath == Integer.MAX_VALUE ? -1 : shortestPath;
+    }
+
+    private long search(DistanceIndex index, ArrayDigraph hyponyms, int maxDistance, boolean observed) {
+        vDequeued = 0;
+        wDequeued = 0;
+        scannedEdges = 0;
+        terminatedEarly = false;
+        if (index != null) {
+            strategy = SAPQueryMetrics.Strategy.INDEX;
+            if (vCount == 1 && wCount == 1) {
+                return within(index.query(vSources[0], wSources[0]), maxDistance);
+            }
+
+            // an index rebuilt after updates may have more hubs
+            if (indexScratch == null || indexScratch.hubsCount() < index.hubsCount()) {
+                indexScratch = new DistanceIndex.Scratch(index.hubsCount());
+            }
+            return within(index.query(vSources, vCount, wSources, wCount, indexScratch), maxDistance);
+        }
+
+        if (hyponyms != null) {
+            strategy = SAPQueryMetrics.Strategy.FRONTIER_BALANCED;
+            FrontierSearch search = frontierSearch(hyponyms);
+            long result = search.find(vSources, vCount, wSources, wCount, limitOf(maxDistance));
+            vDequeued = search.vExpanded();
+            wDequeued = search.wExpanded();
+            scannedEdges = search.scannedEdges();
+            terminatedEarly = search.terminatedEarly();
+            return result;
+        }
+
+        strategy = SAPQueryMetrics.Strategy.LOCKSTEP;
+        vBfs.setCountingEdges(observed);
+        wBfs.setCountingEdges(observed);
+        vBfs.startBfsInLockstep(vSources, vCount);
+        wBfs.startBfsInLockstep(wSources, wCount);
+        long result = calculateShortestPath(limitOf(maxDistance));
+        vDequeued = vBfs.getDequeuedCount();
+        wDequeued = wBfs.getDequeuedCount();
+        scannedEdges = vBfs.getScannedEdges() + wBfs.getScannedEdges();
+        return result;
+    }
+
+    private long calculateShortestPath(int limit) {
+        shortestPath = limit;
+        ancestor = -1;
+
+        int lastV = -1;
+        int lastW = -1;
+
+        do {
+            lastV = makeStep(vBfs, wBfs);
+            lastW = makeStep(wBfs, vBfs);
+
+            lastV = tryTerminate(vBfs, lastV);
+            lastW = tryTerminate(wBfs, lastW);
+        } while (lastV != -1 || lastW != -1);
+
+        if (ancestor == -1) {
+            shortestPath = -1;
+        }
+
+        return result(shortestPath, ancestor);
+    }
+
+    private void setSources(int[] v, int vSize, int[] w, int wSize) {
+        vSources = v;
+        vCount = vSize;
+        wSources = w;
+        wCount = wSize;
+    }
+
+    private int[] copy(Iterable<Integer> vertexes, int[] buffer) {
+        int count = 0;
+        for (int v : vertexes) {
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, count * 2);
+            }
+            buffer[count++] = v;
+        }
+        copiedCount = count;
+        return buffer;
+    }
+
+    private FrontierSearch frontierSearch(ArrayDigraph hyponyms) {
+        if (frontierSearch == null) {
+            frontierSearch = new FrontierSearch((ArrayDigraph) graph, hyponyms);
+        }
+        return frontierSearch;
+    }
+
+    private int makeStep(FastBFS firstBfs, FastBFS secondBfs) {
+        int lastVertex = firstBfs.makeStep();
+        if (lastVertex != -1 && secondBfs.hasPathTo(lastVertex)) {
+            int shortestCandidate = firstBfs.distanceTo(lastVertex)
+                    + secondBfs.distanceTo(lastVertex);
+            if (shortestCandidate < shortestPath) {
+                ancestor = lastVertex;
+                shortestPath = shortestCandidate;
+            }
+        }
+        return lastVertex;
+    }
+
+    // vertexes still queued are at least as far as the current one, so once that reaches the
+    // best length (or the limit) the side can't find a strictly shorter path
+    private int tryTerminate(FastBFS v, int lastVertex) {
+        if (v.getCurrentDistance() >= shortestPath) {
+            if (!v.isTerminated()) {
+                terminatedEarly = true;
+            }
+            v.terminate();
+            return -1;
+        }
+        return lastVertex;
+    }
+}
@@ -1,20 +1,43 @@
-import edu.princeton.cs.algs4.Bag;
-import edu.princeton.cs.algs4.Digraph;
-import edu.princeton.cs.algs4.In;
-
-import java.util.HashMap;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Queries are thread-safe and run concurrently under a shared read lock, so one instance can be
+// shared between any number of query threads. addSynset and addHypernym take the write lock and
+// change the graph in place, in time proportional to the change rather than to the graph.
 public class WordNet {
     // Noun -> vertex ids - one noun might be assigned to several vertexes => might appear
-    // in several synsets
-    private final HashMap<String, Bag<Integer>> nouns = new HashMap<String, Bag<Integer>>();
-    // Vertex id -> synset
-    private final HashMap<Integer, String> synsets = new HashMap<Integer, String>();
-    private final Digraph graph;
+    // in several synsets; vertex id -> synset
+    private final NounDictionary dictionary;
+    private final ArrayDigraph graph;
     private final SAP sap;
 
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    // number of synsets without hypernyms, kept up to date by the updates
+    private int rootsCount = 1;
+
+    // upward search state of the cycle check, grown with the graph
+    private int[] cycleMarks = new int[0];
+    private int[] cycleQueue = new int[0];
+    private int cycleMark = 0;
+
+    // idle searches for neighborhood queries, which use the reversed graph SAP keeps
+    private final ConcurrentLinkedQueue<NeighborhoodSearch> neighborhoodSearches =
+            new ConcurrentLinkedQueue<>();
+
     // constructor takes the name of the two input files
     public WordNet(String synsetsFileName, String hypernymsFileName) {
+        this(synsetsFileName, hypernymsFileName, SAP.DEFAULT_CACHE_CAPACITY);
+    }
+
+    // cacheCapacity is the maximum number of cached distance queries; 0 disables caching
+    public WordNet(String synsetsFileName, String hypernymsFileName, int cacheCapacity) {
         if (synsetsFileName == null) {
             throw new IllegalArgumentException("File with synsets is null");
         }
@@ -23,188 +46,412 @@ public class WordNet {
             throw new IllegalArgumentException("File with hypernyms is null");
         }
 
-        In sFile = new In(synsetsFileName);
-        In hFile = new In(hypernymsFileName);
+        WordNetLoader.Result loaded = WordNetLoader.load(synsetsFileName, hypernymsFileName,
+                                                         Runtime.getRuntime().availableProcessors() > 1);
+        dictionary = NounDictionary.build(loaded.synsets);
+        graph = loaded.graph;
+
+        DagValidator.validate(graph);
+
+        sap = new SAP(graph, cacheCapacity);
+    }
+
+    private WordNet(WordNetSnapshot snapshot, int cacheCapacity) {
+        dictionary = snapshot.dictionary;
+        graph = snapshot.graph;
+        sap = new SAP(graph, cacheCapacity);
+    }
+
+    // opens a snapshot written by saveSnapshot; the graph is only checked to be well-formed, not
+    // validated as a WordNet again
+    public static WordNet fromSnapshot(String snapshotFileName) {
+        return fromSnapshot(snapshotFileName, SAP.DEFAULT_CACHE_CAPACITY);
+    }
 
-        int count = loadSynsets(sFile);
-        graph = new Digraph(count);
-        loadHypernyms(hFile);
+    public static WordNet fromSnapshot(String snapshotFileName, int cacheCapacity) {
+        if (snapshotFileName == null) {
+            throw new IllegalArgumentException("Snapshot file is null");
+        }
 
-        checkForCycles(graph);
-        checkThatOneRooted(graph);
+        return new WordNet(WordNetSnapshot.read(snapshotFileName), cacheCapacity);
+    }
 
-        sap = new SAP(graph);
+    // writes graph, synsets and noun index into a binary file for fast startup
+    public void saveSnapshot(String snapshotFileName) {
+        readLock.lock();
+        try {
+            if (snapshotFileName == null) {
+                throw new IllegalArgumentException("Snapshot file is null");
+            }
+
+            WordNetSnapshot.write(snapshotFileName, graph, dictionary);
+        }
+        finally {
+            readLock.unlock();
+        }
     }
 
-    // returns all WordNet nouns
+    // returns all WordNet nouns; the iteration must not overlap with updates
     public Iterable<String> nouns() {
-        return nouns.keySet();
+        return dictionary.nouns();
     }
 
     // is the word a WordNet noun?
     public boolean isNoun(String word) {
-        checkNoun(word);
-        return nouns.containsKey(word);
+        readLock.lock();
+        try {
+            checkNoun(word);
+            return dictionary.contains(word);
+        }
+        finally {
+            readLock.unlock();
+        }
     }
 
     // distance between nounA and nounB (defined below)
     public int distance(String nounA, String nounB) {
-        Iterable<Integer> a = getNoun(nounA);
-        Iterable<Integer> b = getNoun(nounB);
+        readLock.lock();
+        try {
+            int[] a = getSynsetIds(nounA);
+            int[] b = getSynsetIds(nounB);
 
-        return sap.length(a, b);
+            return sap.length(a, b);
+        }
+        finally {
+            readLock.unlock();
+        }
     }
 
     // a synset (second field of synsets.txt) that is the common ancestor of nounA and nounB
     // in a shortest ancestral path (defined below)
     public String sap(String nounA, String nounB) {
-        Iterable<Integer> a = getNoun(nounA);
-        Iterable<Integer> b = getNoun(nounB);
+        readLock.lock();
+        try {
+            int[] a = getSynsetIds(nounA);
+            int[] b = getSynsetIds(nounB);
+
+            int ancestor = sap.ancestor(a, b);
+            if (ancestor == -1) {
+                throw new IllegalArgumentException(
+                        "Words '" + nounA + "' and '" + nounB + "' don't have common ancestor");
+            }
 
-        int ancestor = sap.ancestor(a, b);
-        if (ancestor == -1) {
-            throw new IllegalArgumentException(
-                    "Words '" + nounA + "' and '" + nounB + "' don't have common ancestor");
+            return dictionary.synset(ancestor);
+        }
+        finally {
+            readLock.unlock();
         }
-
-        return synsets.get(ancestor);
     }
 
-    private int loadSynsets(In file) {
-        int count = 0;
-        while (file.hasNextLine()) {
-            String line = file.readLine();
-            String[] tokens = line.split(",");
-            final int vertexId = Integer.parseInt(tokens[0]);
-
-            String synset = tokens[1];
-            synsets.put(vertexId, synset);
+    // distance(nounA, nounB) if it is at most maxDistance, -1 otherwise; cheaper than distance
+    // for a small maxDistance because the search stops as soon as it exceeds the bound
+    public int distanceWithin(String nounA, String nounB, int maxDistance) {
+        readLock.lock();
+        try {
+            int[] a = getSynsetIds(nounA);
+            int[] b = getSynsetIds(nounB);
 
-            String[] nouns = tokens[1].split(" ");
-            for (String noun : nouns) {
-                Bag<Integer> vertexes = this.nouns.get(noun);
-                if (vertexes == null) {
-                    vertexes = new Bag<Integer>();
-                    this.nouns.put(noun, vertexes);
-                }
+            return sap.lengthWithin(a, b, maxDistance);
+        }
+        finally {
+            readLock.unlock();
+        }
+    }
 
-                vertexes.add(vertexId);
+    // All other nouns at distance at most maxDistance from the noun, ordered by distance and then
+    // in nouns() order, which is lexicographic for nouns not added later. One traversal of the
+    // neighborhood, no per-noun SAP queries.
+    public List<String> nounsWithin(String noun, int maxDistance) {
+        readLock.lock();
+        try {
+            ArrayDigraph reversed = sap.hyponyms();
+            int[] ids = getSynsetIds(noun);
+            if (maxDistance < 0) {
+                throw new IllegalArgumentException("Max distance can't be negative");
             }
 
-            ++count;
+            NeighborhoodSearch search = acquireNeighborhoodSearch(reversed);
+            try {
+                int count = search.find(ids, maxDistance, Integer.MAX_VALUE, dictionary.indexOf(noun));
+                return nouns(search, count);
+            }
+            finally {
+                neighborhoodSearches.offer(search);
+            }
+        }
+        finally {
+            readLock.unlock();
         }
+    }
 
-        return count;
+    // The k other nouns closest to the noun, ordered like in nounsWithin; fewer if there are not
+    // that many connected nouns. The search goes up and down from the noun
+    // synsets in increasing distance order and stops at the first distance where k nouns are
+    // known, so the cost depends on k rather than on the number of nouns.
+    public List<String> nearestNouns(String noun, int k) {
+        readLock.lock();
+        try {
+            ArrayDigraph reversed = sap.hyponyms();
+            int[] ids = getSynsetIds(noun);
+            if (k < 0) {
+                throw new IllegalArgumentException("Number of nouns can't be negative");
+            }
+
+            NeighborhoodSearch search = acquireNeighborhoodSearch(reversed);
+            try {
+                int count = search.find(ids, SAP.UNBOUNDED, k, dictionary.indexOf(noun));
+                return nouns(search, Math.min(count, k));
+            }
+            finally {
+                neighborhoodSearches.offer(search);
+            }
+        }
+        finally {
+            readLock.unlock();
+        }
     }
 
-    private void loadHypernyms(In file) {
-        while (file.hasNextLine()) {
-            String line = file.readLine();
-            String[] tokens = line.split(",");
-            if (tokens.length < 2) {
-                continue;
+    // distance(nouns[i], nouns[j]) for all i and j, computed for up to 64 nouns per traversal
+    public int[][] distances(String[] nouns) {
+        readLock.lock();
+        try {
+            if (nouns == null) {
+                throw new IllegalArgumentException("Nouns are null");
             }
 
-            final int v = Integer.parseInt(tokens[0]);
-            for (int iEdge = 1; iEdge < tokens.length; ++iEdge) {
-                graph.addEdge(v, Integer.parseInt(tokens[iEdge]));
+            int[][] vertexes = new int[nouns.length][];
+            for (int i = 0; i < nouns.length; ++i) {
+                vertexes[i] = getSynsetIds(nouns[i]);
             }
+
+            return sap.lengths(vertexes);
+        }
+        finally {
+            readLock.unlock();
         }
     }
 
-    private void checkThatOneRooted(Digraph g) {
-        RootsDetector d = new RootsDetector(g);
-        if (!d.hasOneRoot()) {
-            throw new IllegalArgumentException("Provided graph doesn't have exactly one root");
+    // Adds a synset (nouns separated by spaces, like in synsets.txt) with the given hypernyms and
+    // returns its id, the next one after all existing synsets. A synset without hypernyms would
+    // be a second root and is rejected. Cached distances stay valid, a distance index is dropped.
+    public int addSynset(String synset, int... hypernymIds) {
+        if (synset == null) {
+            throw new IllegalArgumentException("Synset is null");
+        }
+        if (synset.trim().isEmpty()) {
+            throw new IllegalArgumentException("Synset has no nouns");
+        }
+        if (hypernymIds == null) {
+            throw new IllegalArgumentException("Hypernyms are null");
+        }
+
+        writeLock.lock();
+        try {
+            for (int hypernymId : hypernymIds) {
+                checkSynsetId(hypernymId);
+            }
+
+            // the new synset has no hyponyms, so its edges can't close a cycle
+            int roots = rootsCount + (hypernymIds.length == 0 ? 1 : 0);
+            if (roots != 1) {
+                throw new IllegalArgumentException("Synset without hypernyms would be a second root");
+            }
+
+            int id = dictionary.addSynset(synset);
+            sap.addVertex();
+            for (int hypernymId : hypernymIds) {
+                addEdge(id, hypernymId);
+            }
+
+            rootsCount = roots;
+            return id;
+        }
+        finally {
+            writeLock.unlock();
         }
     }
 
-    private void checkForCycles(Digraph g) {
-        CycleDetector detector = new CycleDetector(g);
-        if (detector.hasCycle(g)) {
-            throw new IllegalArgumentException("Graph is not DAG because it has cycle");
+    // Adds the hypernym edge synsetId -> hypernymId. Rejected if it would close a cycle, found by
+    // an upward search from hypernymId that only visits its ancestors. Clears cached distances
+    // and drops a distance index.
+    public void addHypernym(int synsetId, int hypernymId) {
+        writeLock.lock();
+        try {
+            checkSynsetId(synsetId);
+            checkSynsetId(hypernymId);
+
+            if (isAncestor(synsetId, hypernymId)) {
+                throw new IllegalArgumentException(
+                        "Hypernym " + hypernymId + " of " + synsetId + " would create a cycle");
+            }
+
+            int roots = rootsCount - (graph.outdegree(synsetId) == 0 ? 1 : 0);
+            if (roots != 1) {
+                throw new IllegalArgumentException("Graph would not have exactly one root");
+            }
+
+            addEdge(synsetId, hypernymId);
+            rootsCount = roots;
+        }
+        finally {
+            writeLock.unlock();
         }
     }
 
-    private Bag<Integer> getNoun(String noun) {
-        checkNoun(noun);
-        Bag<Integer> v = nouns.get(noun);
-        if (v == null) {
-            throw new IllegalArgumentException("Noun '" + noun + "' is not a WordNet noun");
+    // Precomputes ancestor labels for constant-time distance and sap queries; returns false and
+    // keeps the BFS search if the labels need more than maxLabelEntries entries
+    public boolean buildDistanceIndex(long maxLabelEntries) {
+        readLock.lock();
+        try {
+            return sap.buildDistanceIndex(maxLabelEntries);
+        }
+        finally {
+            readLock.unlock();
         }
-        return v;
     }
 
-    private void checkNoun(String noun) {
-        if (noun == null) {
-            throw new IllegalArgumentException("Noun can't be null");
+    // Selects the BFS used for distance and sap queries when there is no distance index
+    public void setSearchMode(SAP.SearchMode mode) {
+        readLock.lock();
+        try {
+            sap.setSearchMode(mode);
+        }
+        finally {
+            readLock.unlock();
         }
     }
 
-    private class RootsDetector {
-        Digraph graph;
+    // total number of vertexes expanded by distance and sap queries
+    public long expandedVertices() {
+        return sap.expandedVertices();
+    }
 
-        RootsDetector(Digraph g) {
-            graph = g;
-        }
+    // See SAP.setQueryListener; called for every distance, sap and distanceWithin query
+    public void setQueryListener(SAPQueryListener listener) {
+        sap.setQueryListener(listener);
+    }
 
-        public boolean hasOneRoot() {
-            int rootCount = 0;
-            for (int v = 0; v < graph.V(); ++v) {
-                if (!graph.adj(v).iterator().hasNext()) {
-                    if (++rootCount > 1) {
-                        return false;
-                    }
-                }
-            }
+    // See SAP.enableMetrics
+    public SAPMetricsMBean enableMetrics(String jmxName) {
+        return sap.enableMetrics(jmxName);
+    }
+
+    // aggregate metrics of distance and sap queries; null unless enabled
+    public SAPMetricsMBean metrics() {
+        return sap.metrics();
+    }
+
+    // number of distance queries answered from the cache
+    public long cacheHits() {
+        return sap.cacheHits();
+    }
+
+    // number of distance queries that had to be computed although caching is enabled
+    public long cacheMisses() {
+        return sap.cacheMisses();
+    }
+
+    // number of results dropped from the cache to stay within its capacity
+    public long cacheEvictions() {
+        return sap.cacheEvictions();
+    }
 
-            return rootCount == 1;
+    // All ancestors of the noun synsets packed as (vertex, distance), sorted by vertex
+    long[] ancestors(String noun) {
+        readLock.lock();
+        try {
+            return sap.ancestors(getSynsetIds(noun));
+        }
+        finally {
+            readLock.unlock();
         }
     }
 
-    private class CycleDetector {
-        private static final byte VISITED = 1 << 0;
-        private static final byte IN_STACK = 1 << 1;
+    // distance between two nouns given their ancestors, same as distance(nounA, nounB)
+    static int distance(long[] ancestorsA, long[] ancestorsB) {
+        return SAPSearch.length(ancestorsA, ancestorsB);
+    }
 
-        private final Digraph graph;
-        private final byte[] visited;
+    private void addEdge(int v, int w) {
+        sap.addEdge(v, w);
+    }
 
-        CycleDetector(Digraph d) {
-            visited = new byte[d.V()];
-            graph = d;
+    // true if ancestor is v or can be reached from v going up; visits only ancestors of v
+    private boolean isAncestor(int ancestor, int v) {
+        if (cycleMarks.length < graph.V()) {
+            cycleMarks = new int[graph.V() + graph.V() / 2];
+            cycleQueue = new int[cycleMarks.length];
+            cycleMark = 0;
         }
+        if (cycleMark == Integer.MAX_VALUE) {
+            Arrays.fill(cycleMarks, 0);
+            cycleMark = 0;
+        }
+        ++cycleMark;
+
+        int tail = 0;
+        cycleQueue[tail++] = v;
+        cycleMarks[v] = cycleMark;
+        for (int head = 0; head < tail; ++head) {
+            final int u = cycleQueue[head];
+            if (u == ancestor) {
+                return true;
+            }
 
-        public boolean hasCycle(Digraph g) {
-            for (int v = 0; v < g.V(); ++v) {
-                if (dfs(v)) {
-                    return true;
+            for (int e = graph.firstEdge(u), end = graph.lastEdge(u); e < end; ++e) {
+                final int p = graph.target(e);
+                if (cycleMarks[p] != cycleMark) {
+                    cycleMarks[p] = cycleMark;
+                    cycleQueue[tail++] = p;
                 }
             }
+        }
+        return false;
+    }
 
-            return false;
+    private void checkSynsetId(int id) {
+        if (id < 0 || id >= graph.V()) {
+            throw new IllegalArgumentException(
+                    "Synset id " + id + " is not between 0 and " + (graph.V() - 1));
         }
+    }
 
-        private boolean dfs(int vertex) {
-            if ((visited[vertex] & VISITED) != 0) {
-                return false;
-            }
+    // the first count nouns found by the search
+    private List<String> nouns(NeighborhoodSearch search, int count) {
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add(dictionary.noun(search.noun(i)));
+        }
+        return result;
+    }
 
-            visited[vertex] |= VISITED | IN_STACK;
-            for (int w : graph.adj(vertex)) {
-                if ((visited[w] & IN_STACK) != 0 || dfs(w)) {
-                    return true;
-                }
-            }
-            visited[vertex] &= ~IN_STACK;
-            return false;
+    private NeighborhoodSearch acquireNeighborhoodSearch(ArrayDigraph reversed) {
+        NeighborhoodSearch search = neighborhoodSearches.poll();
+        if (search != null) {
+            return search;
+        }
+        return new NeighborhoodSearch(graph, reversed, dictionary);
+    }
+
+    private int[] getSynsetIds(String noun) {
+        checkNoun(noun);
+        int[] v = dictionary.synsetIds(noun);
+        if (v == null) {
+            throw new IllegalArgumentException("Noun '" + noun + "' is not a WordNet noun");
+        }
+        return v;
+    }
+
+    private void checkNoun(String noun) {
+        if (noun == null) {
+            throw new IllegalArgumentException("Noun can't be null");
         }
     }
 
     // do unit testing of this class
     public static void main(String[] args) {
         // Digraph d = new Digraph(new In(args[0]));
-        // WordNet.checkForCycles(d);
-        // WordNet.checkThatOneRooted(d);
+        // DagValidator.validate(new ArrayDigraph(d));
         // new WordNet(args[0], args[1]);
     }
 }
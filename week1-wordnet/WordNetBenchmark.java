@@ -0,0 +1,204 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// Micro-benchmarks for loading, SAP queries and outcast on real input files:
+//   java WordNetBenchmark synsets.txt hypernyms.txt [name filter]
+// Every benchmark runs warmup iterations first and then reports the mean time per operation
+// with its deviation over the measured iterations, plus bytes allocated per operation by all
+// threads: outcast of 32 or more nouns runs its rows on the common pool, so the benchmark thread
+// alone would miss their allocation. Results of all operations go into a sink so the JIT can't
+// drop them.
+public class WordNetBenchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final int PAIRS_COUNT = 1 << 16;
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final long SEED = 42;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile long sink;
+
+    private interface Operation {
+        long run(int i);
+    }
+
+    public static void main(String[] args) {
+        final String synsets = args[0];
+        final String hypernyms = args[1];
+        final String filter = args.length > 2 ? args[2] : "";
+
+        final WordNet cached = new WordNet(synsets, hypernyms);
+        final WordNet uncached = new WordNet(synsets, hypernyms, 0);
+        final String[] nouns = nouns(cached);
+        final Random random = new Random(SEED);
+
+        final String[][] uniformPairs = pairs(nouns, random, null);
+        final String[][] zipfPairs = pairs(nouns, random, zipfCdf(nouns.length));
+
+        final WordNetLoader.Result loaded = WordNetLoader.load(synsets, hypernyms, false);
+        final SAP sap = new SAP(loaded.graph, 0);
+        final List<List<Integer>> vertexSets = vertexSets(loaded.graph.V(), random);
+
+        StdOut.println("B/op sums the allocation of all threads, pool workers included");
+        StdOut.printf("%-28s %14s %12s %14s%n", "benchmark", "ns/op", "+-", "B/op");
+
+        bench("load", filter, 1, i -> new WordNet(synsets, hypernyms, 0).isNoun(nouns[0]) ? 1 : 0);
+
+        bench("distance.uniform", filter, PAIRS_COUNT,
+              i -> uncached.distance(uniformPairs[0][i], uniformPairs[1][i]));
+        bench("distance.zipf", filter, PAIRS_COUNT,
+              i -> uncached.distance(zipfPairs[0][i], zipfPairs[1][i]));
+        bench("distance.zipf.cached", filter, PAIRS_COUNT,
+              i -> cached.distance(zipfPairs[0][i], zipfPairs[1][i]));
+
+        bench("sap.length.sets", filter, vertexSets.size() / 2,
+              i -> sap.length(vertexSets.get(2 * i), vertexSets.get(2 * i + 1)));
+
+        final SAP packed = new SAP(PackedDigraph.copyOf(loaded.graph), 0);
+        bench("sap.length.sets.packed", filter, vertexSets.size() / 2,
+              i -> packed.length(vertexSets.get(2 * i), vertexSets.get(2 * i + 1)));
+
+        final Outcast outcast = new Outcast(uncached);
+        for (int size : new int[] { 5, 20, 100 }) {
+            final String[][] lists = nounLists(nouns, random, size, Math.max(4096 / size, 16));
+            bench("outcast." + size, filter, lists.length, i -> outcast.outcast(lists[i]).length());
+        }
+    }
+
+    private static void bench(String name, String filter, int operations, Operation operation) {
+        if (!name.contains(filter)) {
+            return;
+        }
+
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; ++iteration) {
+            runIteration(operations, operation);
+        }
+
+        final double[] nanosPerOperation = new double[MEASURED_ITERATIONS];
+        long allocated = 0;
+        for (int iteration = 0; iteration < MEASURED_ITERATIONS; ++iteration) {
+            final long bytesBefore = allocatedBytes();
+            nanosPerOperation[iteration] = (double) runIteration(operations, operation) / operations;
+            allocated += allocatedBytes() - bytesBefore;
+        }
+
+        double mean = 0;
+        for (double value : nanosPerOperation) {
+            mean += value / MEASURED_ITERATIONS;
+        }
+        double variance = 0;
+        for (double value : nanosPerOperation) {
+            variance += (value - mean) * (value - mean) / MEASURED_ITERATIONS;
+        }
+
+        StdOut.printf("%-28s %14.1f %12.1f %14.1f%n", name, mean, Math.sqrt(variance),
+                      (double) allocated / ((long) operations * MEASURED_ITERATIONS));
+    }
+
+    // Bytes allocated so far by the live threads. Pool workers outlive the iterations, so the
+    // difference of two readings covers the work they did for the benchmark.
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            // -1 for a thread that ended in the meantime
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    // nanoseconds taken by one pass over all operations
+    private static long runIteration(int operations, Operation operation) {
+        long result = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < operations; ++i) {
+            result += operation.run(i);
+        }
+        final long elapsed = System.nanoTime() - start;
+        sink += result;
+        return elapsed;
+    }
+
+    private static String[] nouns(WordNet wordnet) {
+        final List<String> nouns = new ArrayList<>();
+        for (String noun : wordnet.nouns()) {
+            nouns.add(noun);
+        }
+        // popular nouns of the Zipfian pairs shouldn't all start with 'a'
+        Collections.shuffle(nouns, new Random(SEED));
+        return nouns.toArray(new String[0]);
+    }
+
+    // cdf[i] is the probability to pick one of nouns 0 .. i with P(i) ~ 1 / (i + 1)^s
+    private static double[] zipfCdf(int n) {
+        final double[] cdf = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; ++i) {
+            total += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cdf[i] = total;
+        }
+        for (int i = 0; i < n; ++i) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+    // uniform pairs if cdf is null, otherwise pairs drawn from cdf
+    private static String[][] pairs(String[] nouns, Random random, double[] cdf) {
+        final String[][] pairs = new String[2][PAIRS_COUNT];
+        for (int i = 0; i < PAIRS_COUNT; ++i) {
+            for (int side = 0; side < 2; ++side) {
+                pairs[side][i] = nouns[cdf == null ? random.nextInt(nouns.length) : sample(cdf, random)];
+            }
+        }
+        return pairs;
+    }
+
+    private static int sample(double[] cdf, Random random) {
+        final double u = random.nextDouble();
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (cdf[middle] < u) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // pairs of vertex sets of 1 to 8 random synsets
+    private static List<List<Integer>> vertexSets(int vertexCount, Random random) {
+        final List<List<Integer>> sets = new ArrayList<>();
+        for (int i = 0; i < PAIRS_COUNT / 4; ++i) {
+            final List<Integer> set = new ArrayList<>();
+            final int size = 1 + random.nextInt(8);
+            for (int j = 0; j < size; ++j) {
+                set.add(random.nextInt(vertexCount));
+            }
+            sets.add(set);
+        }
+        return sets;
+    }
+
+    private static String[][] nounLists(String[] nouns, Random random, int size, int count) {
+        final String[][] lists = new String[count][size];
+        for (int i = 0; i < count; ++i) {
+            for (int j = 0; j < size; ++j) {
+                lists[i][j] = nouns[random.nextInt(nouns.length)];
+            }
+        }
+        return lists;
+    }
+}
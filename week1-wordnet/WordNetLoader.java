@@ -0,0 +1,289 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Reads synsets and hypernyms files through a FileChannel into a reusable byte buffer and parses
+// fields in place, without per-line strings, regex splitting or Integer.parseInt.
+class WordNetLoader {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Synsets in file order; ids[i] is the vertex id of synsets[i]
+    static final class Synsets {
+        final int[] ids;
+        final String[] synsets;
+        final int count;
+
+        private Synsets(int[] ids, String[] synsets, int count) {
+            this.ids = ids;
+            this.synsets = synsets;
+            this.count = count;
+        }
+    }
+
+    static final class Result {
+        final Synsets synsets;
+        final ArrayDigraph graph;
+
+        private Result(Synsets synsets, ArrayDigraph graph) {
+            this.synsets = synsets;
+            this.graph = graph;
+        }
+    }
+
+    private WordNetLoader() {
+    }
+
+    // Reads both files, the hypernyms one on the common pool if parallel is set
+    static Result load(String synsetsFileName, String hypernymsFileName, boolean parallel) {
+        if (!parallel) {
+            Synsets synsets = readSynsets(synsetsFileName);
+            return new Result(synsets, readHypernyms(hypernymsFileName).build(synsets.count));
+        }
+
+        CompletableFuture<ArrayDigraph.Builder> hypernyms =
+                CompletableFuture.supplyAsync(() -> readHypernyms(hypernymsFileName));
+        Synsets synsets = readSynsets(synsetsFileName);
+
+        ArrayDigraph.Builder builder;
+        try {
+            builder = hypernyms.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+
+        return new Result(synsets, builder.build(synsets.count));
+    }
+
+    // Each line is "id,synset,gloss"; only the first two fields are read
+    static Synsets readSynsets(String fileName) {
+        int[] ids = new int[1024];
+        String[] synsets = new String[1024];
+        int count = 0;
+
+        try (LineReader reader = new LineReader(fileName)) {
+            while (reader.nextLine()) {
+                if (reader.isEmptyLine()) {
+                    continue;
+                }
+
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                    synsets = Arrays.copyOf(synsets, count * 2);
+                }
+
+                ids[count] = reader.nextInt();
+                synsets[count] = reader.nextString();
+                ++count;
+            }
+        }
+
+        return new Synsets(ids, synsets, count);
+    }
+
+    // Each line is "synset id,hypernym id,hypernym id,..."
+    static ArrayDigraph.Builder readHypernyms(String fileName) {
+        ArrayDigraph.Builder builder = new ArrayDigraph.Builder();
+
+        try (LineReader reader = new LineReader(fileName)) {
+            while (reader.nextLine()) {
+                if (reader.isEmptyLine()) {
+                    continue;
+                }
+
+                final int v = reader.nextInt();
+                while (reader.hasNextField()) {
+                    builder.addEdge(v, reader.nextInt());
+                }
+            }
+        }
+
+        return builder;
+    }
+
+    // Iterates over lines of a file and over comma-separated fields of the current line
+    private static final class LineReader implements AutoCloseable {
+        private final String fileName;
+        private final FileChannel channel;
+
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        private int limit = 0;
+        private boolean eof = false;
+
+        private int lineNumber = 0;
+        private int lineStart = 0;
+        private int lineEnd = 0;
+        // next line starts here
+        private int nextStart = 0;
+        // position of the next field within the current line; lineEnd + 1 when no fields are left
+        private int position = 0;
+
+        LineReader(String fileName) {
+            this.fileName = fileName;
+            Path path = Paths.get(fileName);
+            if (!Files.isReadable(path)) {
+                throw new IllegalArgumentException("could not open " + fileName);
+            }
+
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            catch (IOException e) {
+                throw new IllegalArgumentException("could not open " + fileName, e);
+            }
+        }
+
+        boolean nextLine() {
+            int end = findLineEnd(nextStart);
+            while (end == -1 && !eof) {
+                fill();
+                end = findLineEnd(nextStart);
+            }
+
+            if (end == -1) {
+                if (nextStart == limit) {
+                    return false;
+                }
+                // last line without line break
+                end = limit;
+            }
+
+            lineStart = nextStart;
+            nextStart = end + 1;
+            lineEnd = end > lineStart && buffer[end - 1] == '\r' ? end - 1 : end;
+            position = lineStart;
+            ++lineNumber;
+            return true;
+        }
+
+        boolean isEmptyLine() {
+            return lineStart == lineEnd;
+        }
+
+        // Empty fields at the end of the line don't count, like with String.split, so "34,12," has
+        // two fields
+        boolean hasNextField() {
+            for (int i = position; i < lineEnd; ++i) {
+                if (buffer[i] != ',') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int nextInt() {
+            if (!hasNextField()) {
+                throw malformed("missing field");
+            }
+
+            int i = position;
+            boolean negative = i < lineEnd && buffer[i] == '-';
+            if (negative) {
+                ++i;
+            }
+
+            final int digitsStart = i;
+            long value = 0;
+            while (i < lineEnd && buffer[i] != ',') {
+                final int digit = buffer[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw malformed("'" + (char) buffer[i] + "' is not a digit");
+                }
+
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE) {
+                    throw malformed("number is too large");
+                }
+                ++i;
+            }
+
+            if (i == digitsStart) {
+                throw malformed("empty number");
+            }
+
+            position = i + 1;
+            return (int) (negative ? -value : value);
+        }
+
+        String nextString() {
+            if (!hasNextField()) {
+                throw malformed("missing field");
+            }
+
+            int i = position;
+            while (i < lineEnd && buffer[i] != ',') {
+                ++i;
+            }
+
+            String result = new String(buffer, position, i - position, StandardCharsets.UTF_8);
+            position = i + 1;
+            return result;
+        }
+
+        private int findLineEnd(int from) {
+            for (int i = from; i < limit; ++i) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Moves the unread tail to the buffer start and reads more data after it
+        private void fill() {
+            final int tail = limit - nextStart;
+            if (tail == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                wrapper = ByteBuffer.wrap(buffer);
+            }
+            else if (nextStart > 0) {
+                System.arraycopy(buffer, nextStart, buffer, 0, tail);
+            }
+
+            nextStart = 0;
+            limit = tail;
+
+            try {
+                wrapper.limit(buffer.length).position(limit);
+                int read = channel.read(wrapper);
+                if (read == -1) {
+                    eof = true;
+                }
+                else {
+                    limit += read;
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + fileName, e);
+            }
+        }
+
+        private IllegalArgumentException malformed(String reason) {
+            return new IllegalArgumentException(
+                    "Malformed line " + lineNumber + " in " + fileName + ": " + reason);
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to close " + fileName, e);
+            }
+        }
+    }
+}
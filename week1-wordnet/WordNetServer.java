@@ -0,0 +1,250 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Serves one shared WordNet to local clients over a line-based TCP protocol on the loopback
+// interface. Every request is one line, every response is one line:
+//   ISNOUN noun           -> true | false
+//   DISTANCE nounA nounB  -> length
+//   SAP nounA nounB       -> synset
+//   OUTCAST noun noun...  -> noun
+//   STATS                 -> requests, errors, throughput and latency percentiles
+//   QUIT                  -> closes the connection
+// Failed requests are answered with "ERROR message". Responses go out in request order;
+// requests a client has pipelined are all answered before the output is flushed, so a batch of
+// them costs one write. Each connection is served by its own virtual thread where the runtime
+// has them (Java 21+), by a pooled platform thread otherwise.
+public class WordNetServer implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WordNet wordnet;
+    private final Outcast outcast;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Thread acceptor;
+    // Connections being served. Interrupting a thread doesn't end a blocking socket read, so close
+    // closes the sockets themselves.
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    // port 0 picks a free port, see port()
+    public WordNetServer(WordNet wordnet, int port) {
+        if (wordnet == null) {
+            throw new IllegalArgumentException("WordNet is null");
+        }
+
+        this.wordnet = wordnet;
+        this.outcast = new Outcast(wordnet);
+        try {
+            serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to listen on port " + port, e);
+        }
+
+        executor = newExecutor();
+        acceptor = new Thread(this::acceptConnections, "wordnet-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    // stops accepting connections and closes the ones being served; requests already running
+    // complete, but their responses are lost
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        }
+        catch (IOException ignored) {
+            // closing anyway
+        }
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+        executor.shutdownNow();
+    }
+
+    // response to a single request line, without the line break
+    String handle(String line) {
+        final long start = System.nanoTime();
+        requests.increment();
+        try {
+            String[] words = line.trim().split("\\s+");
+            return execute(words[0].toUpperCase(Locale.ROOT), Arrays.copyOfRange(words, 1, words.length));
+        }
+        catch (IllegalArgumentException e) {
+            errors.increment();
+            return "ERROR " + e.getMessage();
+        }
+        catch (RuntimeException e) {
+            // a failed query must not take the connection down with requests still pipelined
+            errors.increment();
+            return "ERROR " + e;
+        }
+        finally {
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    private String execute(String command, String[] arguments) {
+        switch (command) {
+            case "ISNOUN":
+                checkArguments(command, arguments, 1);
+                return String.valueOf(wordnet.isNoun(arguments[0]));
+            case "DISTANCE":
+                checkArguments(command, arguments, 2);
+                return String.valueOf(wordnet.distance(arguments[0], arguments[1]));
+            case "SAP":
+                checkArguments(command, arguments, 2);
+                return wordnet.sap(arguments[0], arguments[1]);
+            case "OUTCAST":
+                return outcast.outcast(arguments);
+            case "STATS":
+                return stats();
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+        }
+    }
+
+    private String stats() {
+        final double seconds = (System.nanoTime() - startNanos) / 1e9;
+        final long served = requests.sum();
+        return String.format(Locale.ROOT,
+                             "requests=%d errors=%d connections=%d uptime_s=%.1f throughput_rps=%.1f"
+                                     + " p50_us=%.1f p99_us=%.1f p999_us=%.1f",
+                             served, errors.sum(), connections.sum(), seconds, served / seconds,
+                             latencies.percentile(0.5) / 1e3, latencies.percentile(0.99) / 1e3,
+                             latencies.percentile(0.999) / 1e3);
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.increment();
+                openSockets.add(socket);
+                // close may have run after accept returned, without seeing the socket
+                if (serverSocket.isClosed()) {
+                    closeQuietly(socket);
+                    return;
+                }
+                executor.execute(() -> serve(socket));
+            }
+            catch (RejectedExecutionException e) {
+                // closed while handing the connection over, close has closed its socket
+                return;
+            }
+            catch (SocketException e) {
+                // server socket closed
+                return;
+            }
+            catch (IOException e) {
+                // failed connection, keep accepting
+            }
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (Socket socket = connection;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+             Writer out = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            socket.setTcpNoDelay(true);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().equalsIgnoreCase("QUIT")) {
+                    break;
+                }
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                out.write(handle(line));
+                out.write('\n');
+
+                // answer everything already pipelined before paying for a write
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        }
+        catch (IOException e) {
+            // client went away or the server was closed
+        }
+        finally {
+            openSockets.remove(connection);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        }
+        catch (IOException ignored) {
+            // nothing left to do with it
+        }
+    }
+
+    private static void checkArguments(String command, String[] arguments, int count) {
+        if (arguments.length != count) {
+            throw new IllegalArgumentException(command + " takes " + count + " arguments");
+        }
+    }
+
+    // Virtual thread per connection when the runtime has them; looked up reflectively so the
+    // server still builds and runs on Java 17
+    private static ExecutorService newExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "wordnet-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // java WordNetServer synsets.txt hypernyms.txt [port]
+    public static void main(String[] args) throws InterruptedException {
+        WordNet wordnet = new WordNet(args[0], args[1]);
+        WordNetServer server = new WordNetServer(wordnet, args.length > 2 ? Integer.parseInt(args[2]) : 0);
+        StdOut.println("WordNet server listening on " + InetAddress.getLoopbackAddress().getHostAddress()
+                               + ":" + server.port());
+        server.acceptor.join();
+    }
+}
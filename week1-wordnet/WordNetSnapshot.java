@@ -0,0 +1,162 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Binary image of an already validated WordNet. Layout, all values are big-endian:
+//   magic, version,
+//   V, E, offsets[V + 1], targets[E]      - hypernyms graph in CSR form
+//   NounDictionary.writeTo                 - synsets and noun index
+// The file is memory-mapped on reading and the arrays are copied out in bulk; mapGraph leaves the
+// graph section in the mapping instead.
+class WordNetSnapshot {
+    private static final int MAGIC = 0x574E5350; // "WNSP"
+    private static final int VERSION = 2;
+    // magic, version, V and E
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    final ArrayDigraph graph;
+    final NounDictionary dictionary;
+
+    private WordNetSnapshot(ArrayDigraph graph, NounDictionary dictionary) {
+        this.graph = graph;
+        this.dictionary = dictionary;
+    }
+
+    static void write(String fileName, ArrayDigraph graph, NounDictionary dictionary) {
+        Path path = Paths.get(fileName);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(graph.V());
+            out.writeInt(graph.E());
+            // edges of added vertexes may be scattered, so the offsets are recomputed
+            int offset = 0;
+            for (int v = 0; v < graph.V(); ++v) {
+                out.writeInt(offset);
+                offset += graph.outdegree(v);
+            }
+            out.writeInt(offset);
+            for (int v = 0; v < graph.V(); ++v) {
+                for (int e = graph.firstEdge(v); e < graph.lastEdge(v); ++e) {
+                    out.writeInt(graph.target(e));
+                }
+            }
+
+            dictionary.writeTo(out);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to write snapshot " + fileName, e);
+        }
+    }
+
+    static WordNetSnapshot read(String fileName) {
+        Path path = Paths.get(fileName);
+        if (!Files.isReadable(path)) {
+            throw new IllegalArgumentException("could not open " + fileName);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to read snapshot " + fileName, e);
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Snapshot " + fileName + " is truncated", e);
+        }
+    }
+
+    static OffHeapDigraph mapGraph(String fileName) {
+        Path path = Paths.get(fileName);
+        if (!Files.isReadable(path)) {
+            throw new IllegalArgumentException("could not open " + fileName);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+            checkHeader(header);
+            final long vertexCount = header.getInt();
+            final long edgesCount = header.getInt();
+            final long targetsPosition = HEADER_SIZE + (vertexCount + 1) * Integer.BYTES;
+            if (vertexCount < 0 || edgesCount < 0 || targetsPosition + edgesCount * Integer.BYTES > channel.size()) {
+                throw new IllegalArgumentException("Snapshot " + fileName + " is truncated");
+            }
+
+            return checkGraph(new OffHeapDigraph(IntStore.map(channel, HEADER_SIZE, vertexCount + 1),
+                                                 IntStore.map(channel, targetsPosition, edgesCount)),
+                              (int) edgesCount);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to read snapshot " + fileName, e);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Snapshot " + fileName + " is truncated", e);
+        }
+    }
+
+    private static WordNetSnapshot read(ByteBuffer buffer) {
+        checkHeader(buffer);
+
+        final int vertexCount = buffer.getInt();
+        final int edgesCount = buffer.getInt();
+        int[] offsets = readInts(buffer, vertexCount + 1);
+        int[] targets = readInts(buffer, edgesCount);
+        ArrayDigraph graph = checkGraph(new ArrayDigraph(offsets, targets), edgesCount);
+
+        return new WordNetSnapshot(graph, NounDictionary.readFrom(buffer));
+    }
+
+    private static void checkHeader(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a WordNet snapshot");
+        }
+
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version " + version);
+        }
+    }
+
+    // One pass over the edges: the edge ranges must follow each other from 0 up to edgesCount and
+    // every target must be a vertex, so a corrupt snapshot fails here and not inside a query
+    private static <G extends IndexedDigraph> G checkGraph(G graph, int edgesCount) {
+        final int vertexCount = graph.V();
+        int end = 0;
+        for (int v = 0; v < vertexCount; ++v) {
+            if (graph.firstEdge(v) != end || graph.lastEdge(v) < end || graph.lastEdge(v) > edgesCount) {
+                throw new IllegalArgumentException("Snapshot has corrupt edges of vertex " + v);
+            }
+
+            end = graph.lastEdge(v);
+            for (int e = graph.firstEdge(v); e < end; ++e) {
+                final int w = graph.target(e);
+                if (w < 0 || w >= vertexCount) {
+                    throw new IllegalArgumentException("Snapshot has an edge to a missing vertex " + w);
+                }
+            }
+        }
+
+        if (end != edgesCount || graph.E() != edgesCount) {
+            throw new IllegalArgumentException("Snapshot has " + end + " edges instead of " + edgesCount);
+        }
+        return graph;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] result = new int[count];
+        buffer.asIntBuffer().get(result);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return result;
+    }
+}
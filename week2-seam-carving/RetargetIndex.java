@@ -0,0 +1,124 @@
+import edu.princeton.cs.algs4.Picture;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Order in which seam carving removes the pixels of a picture in one direction. Built once by
+// carving the picture down to a single column (or row) and recording the step at which every
+// pixel went away; after that the picture carved to any width (or height) is one pass over the
+// original that keeps the pixels removed last, the same picture as SeamCarver gives after
+// removing the same number of seams.
+// Widths and heights are separate indexes: carving in both directions depends on how vertical
+// and horizontal seams interleave, so one order can't serve every width and height at once.
+public class RetargetIndex {
+    private final int width;
+    private final int height;
+    private final boolean isHorizontal;
+    private final int[] colors;
+    // step at which the pixel y * width + x is removed; the one kept to the end of its row
+    // (or column) gets the number of seams
+    private final int[] order;
+
+    private RetargetIndex(Picture picture, boolean isHorizontal) {
+        if (picture == null) {
+            throw new IllegalArgumentException("Original picture is null");
+        }
+
+        this.width = picture.width();
+        this.height = picture.height();
+        this.isHorizontal = isHorizontal;
+        this.colors = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                colors[y * width + x] = picture.getRGB(x, y);
+            }
+        }
+
+        this.order = new int[width * height];
+        buildOrder(picture);
+    }
+
+    // index for pictures of any width from 1 to the original one, by removing vertical seams
+    public static RetargetIndex forWidths(Picture picture) {
+        return new RetargetIndex(picture, false);
+    }
+
+    // index for pictures of any height from 1 to the original one, by removing horizontal seams
+    public static RetargetIndex forHeights(Picture picture) {
+        return new RetargetIndex(picture, true);
+    }
+
+    // the original picture carved to the given width, or height for a horizontal index
+    public Picture picture(int size) {
+        final int length = seamLength();
+        if (size < 1 || size > length) {
+            throw new IllegalArgumentException("Size must be between 1 and " + length);
+        }
+
+        final int removed = length - size;
+        if (isHorizontal) {
+            final Picture p = new Picture(width, size);
+            final int[] nextRows = new int[width];
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    if (order[y * width + x] >= removed) {
+                        p.setRGB(x, nextRows[x]++, colors[y * width + x]);
+                    }
+                }
+            }
+            return p;
+        }
+
+        final Picture p = new Picture(size, height);
+        for (int y = 0; y < height; ++y) {
+            int nextColumn = 0;
+            for (int x = 0; x < width; ++x) {
+                if (order[y * width + x] >= removed) {
+                    p.setRGB(nextColumn++, y, colors[y * width + x]);
+                }
+            }
+        }
+        return p;
+    }
+
+    // carves the picture to one pixel across the seams, every pixel still there keeps its order
+    private void buildOrder(Picture picture) {
+        final int length = seamLength();
+        Arrays.fill(order, length - 1);
+        new SeamCarver(picture).removeSeams(length - 1, isHorizontal, new OrderRecorder());
+    }
+
+    // pixels in a row for a vertical index, in a column for a horizontal one
+    private int seamLength() {
+        return isHorizontal ? height : width;
+    }
+
+    // Writes the step of every removed pixel to order. positions keeps the original coordinate of
+    // every pixel still there, by virtual rows of the carver: rows for widths, columns for heights.
+    private final class OrderRecorder implements Consumer<int[]> {
+        private final int rows = isHorizontal ? width : height;
+        private final int length = seamLength();
+        private final int[] positions = new int[rows * length];
+        private int step = 0;
+
+        OrderRecorder() {
+            for (int r = 0; r < rows; ++r) {
+                for (int c = 0; c < length; ++c) {
+                    positions[r * length + c] = c;
+                }
+            }
+        }
+
+        @Override
+        public void accept(int[] seam) {
+            final int remaining = length - step;
+            for (int r = 0; r < rows; ++r) {
+                final int index = r * length + seam[r];
+                final int c = positions[index];
+                order[isHorizontal ? c * width + r : r * width + c] = step;
+                System.arraycopy(positions, index + 1, positions, index, remaining - seam[r] - 1);
+            }
+            ++step;
+        }
+    }
+}
@@ -1,15 +1,37 @@
 import edu.princeton.cs.algs4.Picture;
 
-import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 
 public class SeamCarver {
     private static final double MAX_ENERGY = 1000.0;
+    // Rows of at least PARALLEL_MIN_WIDTH pixels in pictures of at least PARALLEL_MIN_PIXELS are
+    // split into one stripe per worker of the common fork-join pool, of at least MIN_STRIPE_WIDTH
+    // columns each; the stripes are joined once per tile of up to MAX_TILE_ROWS rows
+    private static final int PARALLEL_MIN_PIXELS = 1 << 18;
+    private static final int PARALLEL_MIN_WIDTH = 1024;
+    private static final int MIN_STRIPE_WIDTH = 256;
+    private static final int MAX_TILE_ROWS = 32;
 
     private int width;
     private int height;
-    private double[][] energies;
-    private int[][] colors;
+    // Pixel (x, y) is at y * stride + x, the stride stays the original width as seams are removed.
+    // Horizontal operations see the same buffers through a transposed view: virtual (x, y) is
+    // pixel (y, x), so neither direction copies the image when they alternate.
+    private final int stride;
+    private final double[] energies;
+    private final int[] colors;
     private boolean isTransposed;
+    // steps between virtual rows and columns in the buffers for the current view
+    private int rowStep;
+    private int columnStep;
+
+    // seam search workspaces, see findSeam
+    private double[] previousDistances;
+    private double[] currentDistances;
+    private byte[] edgeTo;
+    private Stripe[] stripes;
 
     // create a seam carver object based on the given picture
     public SeamCarver(Picture picture) {
@@ -19,22 +41,21 @@ public class SeamCarver {
 
         this.width = picture.width();
         this.height = picture.height();
+        this.stride = width;
 
-        this.isTransposed = false;
-        this.energies = new double[height][width];
-        this.colors = new int[height][width];
+        this.energies = new double[width * height];
+        this.colors = new int[width * height];
+        transpose(false);
 
         initialize(picture);
     }
 
     // current picture
     public Picture picture() {
-        transposeIfNeeded(false);
-
         Picture p = new Picture(width(), height());
         for (int y = 0; y < height(); ++y) {
             for (int x = 0; x < width(); ++x) {
-                p.setRGB(x, y, getColor(x, y));
+                p.setRGB(x, y, colors[y * stride + x]);
             }
         }
         return p;
@@ -57,18 +78,18 @@ public class SeamCarver {
                     String.format("(%d; %d) is not valid pixel address", x, y));
         }
 
-        return isTransposed ? energies[x][y] : energies[y][x];
+        return energies[y * stride + x];
     }
 
     // sequence of indices for horizontal seam
     public int[] findHorizontalSeam() {
-        transposeIfNeeded(true);
+        transpose(true);
         return findSeam();
     }
 
     // sequence of indices for vertical seam
     public int[] findVerticalSeam() {
-        transposeIfNeeded(false);
+        transpose(false);
         return findSeam();
     }
 
@@ -82,6 +103,17 @@ public class SeamCarver {
         removeSeam(seam, false);
     }
 
+    // Removes count horizontal seams, each the one findHorizontalSeam would return at that point,
+    // in a fraction of the time of count rounds of finding and removing; see removeSeams
+    public void removeHorizontalSeams(int count) {
+        removeSeams(count, true, null);
+    }
+
+    // same as removeHorizontalSeams for vertical seams
+    public void removeVerticalSeams(int count) {
+        removeSeams(count, false, null);
+    }
+
     private void checkSeam(int[] seam, boolean isTransposed) {
         if (seam == null) {
             throw new IllegalArgumentException("Seam is null");
@@ -120,28 +152,11 @@ public class SeamCarver {
         }
     }
 
-    private void transposeIfNeeded(boolean shouldBeTransposed) {
-        if (shouldBeTransposed != isTransposed) {
-            final int newHeight = virtualWidth();
-            final int newWidth = virtualHeight();
-
-            double[][] newEnergies = new double[newHeight][newWidth];
-            int[][] newColors = new int[newHeight][newWidth];
-
-            for (int y = 0; y < virtualHeight(); ++y) {
-                for (int x = 0; x < virtualWidth(); ++x) {
-                    newEnergies[x][y] = getEnergy(x, y);
-                    newColors[x][y] = getColor(x, y);
-                }
-            }
-
-            // StdOut.println(String.format("Transpose from WxH %d x %d  -> %d x %d", virtualWidth(),
-            //                              virtualHeight(), newWidth, newHeight));
-
-            energies = newEnergies;
-            colors = newColors;
-            isTransposed = shouldBeTransposed;
-        }
+    // switches the view only, the buffers stay as they are
+    private void transpose(boolean shouldBeTransposed) {
+        isTransposed = shouldBeTransposed;
+        rowStep = shouldBeTransposed ? 1 : stride;
+        columnStep = shouldBeTransposed ? stride : 1;
     }
 
     private int virtualWidth() {
@@ -163,7 +178,7 @@ public class SeamCarver {
     private void initialize(Picture p) {
         for (int y = 0; y < virtualHeight(); ++y) {
             for (int x = 0; x < virtualWidth(); ++x) {
-                colors[y][x] = p.getRGB(x, y);
+                colors[toBufferIndex(x, y)] = p.getRGB(x, y);
             }
         }
 
@@ -175,26 +190,49 @@ public class SeamCarver {
     }
 
     private void recalculateEnergy(int x, int y) {
-        energies[y][x] = calculateEnergy(x, y);
+        energies[toBufferIndex(x, y)] = calculateEnergy(x, y);
     }
 
     private void removeSeam(int[] seam, boolean shouldBeTransposed) {
         checkSeam(seam, shouldBeTransposed);
-        transposeIfNeeded(shouldBeTransposed);
-        removeSeam(seam);
+        transpose(shouldBeTransposed);
+        if (isTransposed) {
+            removeRows(seam);
+        }
+        else {
+            removeColumns(seam);
+        }
+        updateEnergies(seam);
     }
 
-    private void removeSeam(int[] seam) {
-        for (int y = 0; y < virtualHeight(); ++y) {
+    // seam[y] is the column removed from row y; the rest of each row moves left
+    private void removeColumns(int[] seam) {
+        for (int y = 0; y < height; ++y) {
             final int x = seam[y];
-            final int count = virtualWidth() - x - 1;
+            final int count = width - x - 1;
             if (count != 0) {
-                final int source = x + 1;
-                System.arraycopy(colors[y], source, colors[y], x, count);
-                System.arraycopy(energies[y], source, energies[y], x, count);
+                final int index = y * stride + x;
+                System.arraycopy(colors, index + 1, colors, index, count);
+                System.arraycopy(energies, index + 1, energies, index, count);
+            }
+        }
+    }
+
+    // Seam[x] is the row removed from column x; the rest of each column moves up. Goes row by row,
+    // so the buffers are read and written sequentially instead of a column at a time.
+    private void removeRows(int[] seam) {
+        for (int y = 0; y < height - 1; ++y) {
+            final int rowStart = y * stride;
+            for (int x = 0; x < width; ++x) {
+                if (seam[x] <= y) {
+                    colors[rowStart + x] = colors[rowStart + stride + x];
+                    energies[rowStart + x] = energies[rowStart + stride + x];
+                }
             }
         }
+    }
 
+    private void updateEnergies(int[] seam) {
         if (isTransposed) {
             --height;
         }
@@ -212,78 +250,242 @@ public class SeamCarver {
         }
     }
 
+    // The distances and predecessors of the whole virtual picture are computed once and kept
+    // across removals. Removing a seam only changes cells next to it, and below those cells next to
+    // changed ones, so after every removal the tables are shifted like the picture and only that
+    // cone is computed again; it stops growing where the new values equal the old ones.
+    // The listener, if any, sees every seam before it is removed; the array is reused.
+    void removeSeams(int count, boolean shouldBeTransposed, Consumer<int[]> listener) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Seams count can't be negative");
+        }
+        if (count == 0) {
+            return;
+        }
+        if (count >= width(shouldBeTransposed)) {
+            throw new IllegalArgumentException(
+                    "Can't remove " + count + " seams from " + width(shouldBeTransposed) + " pixels");
+        }
+
+        transpose(shouldBeTransposed);
+        final int w = virtualWidth();
+        final int h = virtualHeight();
+
+        final double[][] distances = new double[h][w];
+        final byte[][] predecessors = new byte[h][w];
+        for (int x = 0; x < w; ++x) {
+            distances[0][x] = getEnergy(x, 0);
+        }
+        for (int y = 1; y < h; ++y) {
+            relaxRow(distances[y - 1], distances[y], predecessors[y], 0, y, 0, w);
+        }
+
+        final int[] seam = new int[h];
+        final double[] oldDistances = new double[w];
+        final byte[] oldPredecessors = new byte[w];
+        for (int i = 0; i < count; ++i) {
+            int end = 0;
+            for (int x = 1; x < virtualWidth(); ++x) {
+                if (distances[h - 1][x] < distances[h - 1][end]) {
+                    end = x;
+                }
+            }
+            seam[h - 1] = end;
+            for (int y = h - 1; y > 0; --y) {
+                seam[y - 1] = seam[y] + predecessors[y][seam[y]];
+            }
+            if (listener != null) {
+                listener.accept(seam);
+            }
+
+            if (isTransposed) {
+                removeRows(seam);
+            }
+            else {
+                removeColumns(seam);
+            }
+            updateEnergies(seam);
+            updateDistances(distances, predecessors, seam, oldDistances, oldPredecessors);
+        }
+    }
+
+    // Tables of removeSeams after the seam was removed from the picture. Cells seam[y] - 2 ..
+    // seam[y] + 1 of row y may have a new energy or new pixels above; cells next to those that
+    // changed in the row above have new distances to choose from.
+    private void updateDistances(double[][] distances, byte[][] predecessors, int[] seam,
+                                 double[] oldDistances, byte[] oldPredecessors) {
+        final int w = virtualWidth();
+        // columns changedFrom .. changedTo - 1 of the previous row changed
+        int changedFrom = 0;
+        int changedTo = 0;
+        for (int y = 0; y < seam.length; ++y) {
+            final int s = seam[y];
+            System.arraycopy(distances[y], s + 1, distances[y], s, w - s);
+            System.arraycopy(predecessors[y], s + 1, predecessors[y], s, w - s);
+
+            int from = s - 2;
+            int to = s + 2;
+            if (changedFrom < changedTo) {
+                from = Math.min(from, changedFrom - 1);
+                to = Math.max(to, changedTo + 1);
+            }
+            from = Math.max(from, 0);
+            to = Math.min(to, w);
+
+            System.arraycopy(distances[y], from, oldDistances, from, to - from);
+            System.arraycopy(predecessors[y], from, oldPredecessors, from, to - from);
+            if (y == 0) {
+                for (int x = from; x < to; ++x) {
+                    distances[0][x] = getEnergy(x, 0);
+                }
+            }
+            else {
+                relaxRow(distances[y - 1], distances[y], predecessors[y], 0, y, from, to);
+            }
+
+            changedFrom = to;
+            changedTo = from;
+            for (int x = from; x < to; ++x) {
+                if (distances[y][x] != oldDistances[x] || predecessors[y][x] != oldPredecessors[x]) {
+                    changedFrom = Math.min(changedFrom, x);
+                    changedTo = x + 1;
+                }
+            }
+        }
+    }
+
     private void tryUpdateEnergy(int x, int y) {
         if (isValidDim(x, virtualWidth()) && isValidDim(y, virtualHeight())) {
             recalculateEnergy(x, y);
         }
     }
 
+    // Row by row dynamic programming over the virtual picture. Only the distances of the previous
+    // and the current row are kept, and every pixel remembers which of the three pixels above it
+    // its path comes from as -1, 0 or +1. Ties go to the leftmost predecessor and the leftmost end.
+    // The workspaces are allocated by the first search for the full picture and reused as it
+    // shrinks.
     private int[] findSeam() {
-        final int vCount = width() * height() + 2;
-        final int virtualTopIndex = vCount - 1;
-        final int virtualBottomIndex = vCount - 2;
+        final int w = virtualWidth();
+        final int h = virtualHeight();
+        allocateWorkspaces();
+
+        double[] previous = previousDistances;
+        double[] current = currentDistances;
+        for (int x = 0; x < w; ++x) {
+            previous[x] = getEnergy(x, 0);
+        }
 
-        final int[] edgeTo = new int[vCount];
-        final double[] distanceTo = new double[vCount];
-        Arrays.fill(distanceTo, Double.POSITIVE_INFINITY);
+        final boolean parallel = stripes != null && w >= PARALLEL_MIN_WIDTH && (long) w * h >= PARALLEL_MIN_PIXELS;
+        final int stripesCount = parallel ? Math.min(stripes.length, w / MIN_STRIPE_WIDTH) : 1;
+        // a stripe recomputes about rows^2 pixels of its neighbors per tile, so the tile height
+        // is kept to 1/16 of the stripe width
+        final int tileRows = Math.max(1, Math.min(MAX_TILE_ROWS, w / stripesCount / 16));
+        for (int y = 1; y < h; ) {
+            if (parallel) {
+                final int rows = Math.min(tileRows, h - y);
+                relaxTileInParallel(previous, current, y, rows, stripesCount);
+                y += rows;
+            }
+            else {
+                relaxRow(previous, current, edgeTo, y * w, y, 0, w);
+                ++y;
+            }
 
-        distanceTo[virtualTopIndex] = 0;
-        for (int x = 0; x < virtualWidth(); ++x) {
-            relax(virtualTopIndex, x, 0, edgeTo, distanceTo);
+            double[] swap = previous;
+            previous = current;
+            current = swap;
         }
 
-        final int lastRowIndex = virtualHeight() - 1;
-        final int lastColumnIndex = virtualWidth() - 1;
-
-        for (int y = 0; y < lastRowIndex; ++y) {
-            for (int x = 0; x < virtualWidth(); ++x) {
-                final int from = toVirtualFlatIndex(x, y);
-                final int nextRowY = y + 1;
+        int end = 0;
+        for (int x = 1; x < w; ++x) {
+            if (previous[x] < previous[end]) {
+                end = x;
+            }
+        }
 
-                if (x > 0) {
-                    relax(from, x - 1, nextRowY, edgeTo, distanceTo);
-                }
+        int[] seam = new int[h];
+        seam[h - 1] = end;
+        for (int y = h - 1; y > 0; --y) {
+            seam[y - 1] = seam[y] + edgeTo[y * w + seam[y]];
+        }
 
-                relax(from, x, nextRowY, edgeTo, distanceTo);
+        return seam;
+    }
 
-                if (x < lastColumnIndex) {
-                    relax(from, x + 1, nextRowY, edgeTo, distanceTo);
+    // Distances of the columns from .. to - 1 of row y from those of the previous row, predecessor
+    // of column x goes to predecessors[predecessorsStart + x]. Every pixel only depends on the
+    // previous row, so disjoint column ranges can go in parallel.
+    private void relaxRow(double[] previous, double[] current, byte[] predecessors, int predecessorsStart,
+                          int y, int from, int to) {
+        final int w = virtualWidth();
+        int index = toBufferIndex(from, y);
+        for (int x = from; x < to; ++x, index += columnStep) {
+            final double energy = energies[index];
+
+            int predecessor = x > 0 ? -1 : 0;
+            double shortest = previous[x + predecessor] + energy;
+            if (predecessor != 0) {
+                final double candidate = previous[x] + energy;
+                if (candidate < shortest) {
+                    shortest = candidate;
+                    predecessor = 0;
                 }
             }
+            if (x < w - 1) {
+                final double candidate = previous[x + 1] + energy;
+                if (candidate < shortest) {
+                    shortest = candidate;
+                    predecessor = 1;
+                }
+            }
+
+            current[x] = shortest;
+            predecessors[predecessorsStart + x] = (byte) predecessor;
         }
+    }
 
-        for (int x = 0; x < virtualWidth(); ++x) {
-            relax(toVirtualFlatIndex(x, lastRowIndex), virtualBottomIndex, edgeTo, distanceTo, 0.0);
+    // Rows y .. y + rows - 1 from the previous row with a single join: every stripe also computes
+    // the pixels of its neighbors that its own ones depend on, so the stripes don't wait for each
+    // other within the tile. The last row goes to current. The calling thread computes the first
+    // stripe while the pool takes the others.
+    private void relaxTileInParallel(double[] previous, double[] current, int y, int rows, int count) {
+        final int w = virtualWidth();
+        for (int i = count - 1; i >= 0; --i) {
+            stripes[i].set(previous, current, y, rows, (int) ((long) i * w / count),
+                           (int) ((long) (i + 1) * w / count));
+            if (i > 0) {
+                stripes[i].fork();
+            }
         }
 
-        int seamLength = virtualHeight();
-        int[] seam = new int[seamLength];
+        stripes[0].relax();
 
-        for (int v = edgeTo[virtualBottomIndex]; v != virtualTopIndex; v = edgeTo[v]) {
-            seam[--seamLength] = v % virtualWidth();
+        for (int i = 1; i < count; ++i) {
+            stripes[i].join();
         }
-
-        return seam;
     }
 
-    private int toVirtualFlatIndex(int x, int y) {
-        return y * virtualWidth() + x;
-    }
+    // the picture only shrinks, so workspaces for its current size fit every later search
+    private void allocateWorkspaces() {
+        if (edgeTo == null) {
+            final int rowLength = Math.max(width, height);
+            previousDistances = new double[rowLength];
+            currentDistances = new double[rowLength];
+            edgeTo = new byte[width * height];
 
-    private void relax(int from, int x, int y, int[] edgeTo, double[] distanceTo) {
-        relax(from, toVirtualFlatIndex(x, y), edgeTo, distanceTo, getEnergy(x, y));
+            final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            if (parallelism > 1 && rowLength >= PARALLEL_MIN_WIDTH && (long) width * height >= PARALLEL_MIN_PIXELS) {
+                stripes = new Stripe[Math.min(parallelism, rowLength / MIN_STRIPE_WIDTH)];
+                for (int i = 0; i < stripes.length; ++i) {
+                    stripes[i] = new Stripe(rowLength);
+                }
+            }
+        }
     }
 
-    private void relax(int from, int to, int[] edgeTo, double[] distanceTo, double energy) {
-        final double candidate = distanceTo[from] + energy;
-        if (candidate < distanceTo[to]) {
-            distanceTo[to] = candidate;
-            edgeTo[to] = from;
-        }
-        // StdOut.println(
-        //         String.format("Relaxation %d -- %.4f --> %d: dst - %.4f, edgeTo - %d", from, energy,
-        //                       to,
-        //                       distanceTo[to], edgeTo[to]));
+    private int toBufferIndex(int x, int y) {
+        return y * rowStep + x * columnStep;
     }
 
     private double calculateEnergy(int x, int y) {
@@ -302,11 +504,11 @@ public class SeamCarver {
     }
 
     private int getColor(int x, int y) {
-        return colors[y][x];
+        return colors[toBufferIndex(x, y)];
     }
 
     private double getEnergy(int x, int y) {
-        return energies[y][x];
+        return energies[toBufferIndex(x, y)];
     }
 
     private int getR(int v) {
@@ -328,6 +530,67 @@ public class SeamCarver {
         return dr * dr + dg * dg + db * db;
     }
 
+    // Columns from .. to - 1 of the rows of one tile; reused for every tile of every search
+    private final class Stripe extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private double[] previous;
+        private double[] current;
+        private int y;
+        private int rows;
+        private int from;
+        private int to;
+
+        // rows of the tile before the last one, and predecessors of the pixels outside the stripe
+        private final double[] tileRow;
+        private final double[] nextTileRow;
+        private final byte[] outsidePredecessors;
+
+        Stripe(int rowLength) {
+            tileRow = new double[rowLength];
+            nextTileRow = new double[rowLength];
+            outsidePredecessors = new byte[rowLength];
+        }
+
+        void set(double[] previousRow, double[] currentRow, int firstRow, int rowsCount, int fromColumn,
+                 int toColumn) {
+            reinitialize();
+            previous = previousRow;
+            current = currentRow;
+            y = firstRow;
+            rows = rowsCount;
+            from = fromColumn;
+            to = toColumn;
+        }
+
+        // The last row of the tile needs the columns from - 1 .. to of the row above, that one
+        // needs from - 2 .. to + 1 and so on; predecessors outside the stripe are thrown away
+        void relax() {
+            final int w = virtualWidth();
+            final int last = y + rows - 1;
+            double[] above = previous;
+            double[] row = tileRow;
+            for (int r = y; r <= last; ++r) {
+                final int reach = last - r;
+                if (r == last) {
+                    row = current;
+                }
+
+                relaxRow(above, row, outsidePredecessors, 0, r, Math.max(0, from - reach), from);
+                relaxRow(above, row, edgeTo, r * w, r, from, to);
+                relaxRow(above, row, outsidePredecessors, 0, r, to, Math.min(w, to + reach));
+
+                above = row;
+                row = row == tileRow ? nextTileRow : tileRow;
+            }
+        }
+
+        @Override
+        protected void compute() {
+            relax();
+        }
+    }
+
     //  unit testing (optional)
     public static void main(String[] args) {
 